@@ -2,6 +2,8 @@ package gui;
 
 import javafx.application.Application;
 import javafx.stage.Stage;
+import utils.sql.connector.DatabaseConnector;
+import utils.sql.queries.concurrent.QueryExecutor;
 
 /**
  * Main class for the application.
@@ -37,6 +39,17 @@ public class EpiQuest extends Application {
         stage.setTitle("EpiQuest");
         stage.show();
     }
+
+    /**
+     * Stop method for the application.
+     * <p>
+     * Stops the query executor and closes the connections held by the connection pool before the application exits.
+     */
+    @Override
+    public void stop() {
+        QueryExecutor.shutdown();
+        DatabaseConnector.shutdown();
+    }
 }
 
 
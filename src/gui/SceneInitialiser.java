@@ -1,40 +1,54 @@
 package gui;
 
+import gui.controllers.AbstractController;
+import gui.controllers.DateRangeController;
 import gui.controllers.GraphController;
 import gui.controllers.MapController;
 import gui.controllers.StatisticsController;
 import gui.controllers.WelcomeController;
 import javafx.application.Platform;
 import javafx.scene.Scene;
+import utils.DateRange;
+import utils.sql.queries.concurrent.QueryExecutor;
 
 import java.time.LocalDate;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Class to create the scenes for the application.
  * <p>
  * This class creates the scenes for the application and stores them in a map, for easy access throughout the program.
+ * <p>
+ * The map, statistics and graph scenes depend on the date range selected on the welcome screen, so they are built
+ * whenever that range changes. The three scenes are prepared at the same time on the query executor, each loading its
+ * FXML file in the background while it fetches its data, off the JavaFX Application Thread. Once all three are ready,
+ * they are finished and published together on the JavaFX Application Thread. If the range changes again before they
+ * are ready, the scenes being built for the old range are discarded.
+ * <p>
+ * The scenes are only built for the first range. Once they have been published, a change of range moves their
+ * controllers to the new range, which fetch their data again and update the scenes in place.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.25
  */
 public class SceneInitialiser {
 
     /**
      * Map to store the scenes for the application. The key is a string representing the scene, and the value is the
-     * Scene object.
+     * Scene object. It must only be used on the JavaFX Application Thread.
      */
     public static final Map<String, Scene> SCENES = new HashMap<>();
 
-    /**
-     * Integer to store the number of times the user has updated the date range.
-     */
-    public static int numberOfUpdates;
     private static SceneInitialiser instance;
     private final WelcomeController welcomeController;
-    private LocalDate startDate, endDate;
+    private MapController mapController;
+    private StatisticsController statisticsController;
+    private GraphController graphController;
+    private int generation;
 
     /**
      * Constructor for the Scenes class.
@@ -43,7 +57,7 @@ public class SceneInitialiser {
      */
     public SceneInitialiser() {
         welcomeController = new WelcomeController();
-        numberOfUpdates = 0;
+        generation = 0;
         createScenes();
     }
 
@@ -62,8 +76,8 @@ public class SceneInitialiser {
     /**
      * Method to create the scenes for the application.
      * <p>
-     * Creates the welcome scene, map scene, statistics scene, and graph scene.
-     * The scenes are then stored in a map for easy access throughout the program.
+     * Creates the welcome scene and stores it in the scenes map. The other scenes are created whenever the user selects
+     * a valid date range.
      */
     private void createScenes() {
         // Create the welcome scene
@@ -71,95 +85,107 @@ public class SceneInitialiser {
         Scene welcomeScene = welcomeController.getScene();
         SCENES.put("welcome", welcomeScene);
 
-        waitForDates();
-    }
-
-    /**
-     * Method to wait for the user to select the start and end dates.
-     * Uses a separate thread to wait for the user to select the dates before setting the fields and creating the next
-     * scenes.
-     */
-    private void waitForDates() {
-        new Thread(() -> {
-            while (welcomeController.getFromDate() == null || welcomeController.getToDate() == null) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    System.out.println("Error waiting for dates" + e.getMessage() + e.getCause() + Arrays.toString(e.getStackTrace()));
-                }
-            }
-
-            startDate = welcomeController.getFromDate();
-            endDate = welcomeController.getToDate();
-            numberOfUpdates++;
-
-            // Create other scenes once dates have been chosen by the user on the JavaFX thread.
-            Platform.runLater(() -> {
-                createMapScene();
-                createStatisticsScene();
-                createGraphScene();
-            });
-        }).start();
+        welcomeController.dateRangeProperty().addListener((observable, oldRange, newRange) -> updateScenes(newRange));
     }
 
     /**
      * Method to update the scenes when the user changes the selected date range.
      * <p>
-     * Remove the map, statistics, and graph scenes from the scenes map and wait until dates are set to create the other
-     * application scenes.
+     * Removes the map, statistics, and graph scenes from the scenes map, since they show the old range. If the scenes
+     * have been built already, they are moved to the new range and stored again. Otherwise, the scenes for the new
+     * range start being built, and any scenes still being built for an older range will be discarded.
      */
-    public void updateScenes() {
+    private void updateScenes(DateRange range) {
+        int currentGeneration = ++generation;
         SCENES.remove("map");
         SCENES.remove("stats");
         SCENES.remove("graph");
-        waitForDates();
+
+        if (range == null) {
+            return;
+        }
+        if (mapController != null) {
+            rebindScenes(range);
+            return;
+        }
+        buildScenes(range, currentGeneration);
     }
 
     /**
-     * Method to create the map scene.
-     * <p>
-     * Creates the map scene and stores it in the scenes map.
-     * The map scene is created in the main JavaFX thread, but this method should only be called once the start and end
-     * dates have been selected. In our implementation this is achieved by calling Platform.runLater() in the thread
-     * that checks for the selected dates.
+     * Method to move the map, statistics and graph scenes to another date range, and store them in the scenes map
+     * again. Each scene fetches its data for the new range in the background and updates itself when it arrives.
      */
-    private void createMapScene() {
-        MapController mapController = new MapController(startDate, endDate);
-        mapController.beginLoading();
-        Scene mapScene = mapController.getScene();
-
-        SCENES.put("map", mapScene);
+    private void rebindScenes(DateRange range) {
+        for (DateRangeController controller : List.of(mapController, statisticsController, graphController)) {
+            controller.updateDateRange(range.getStartDate(), range.getEndDate());
+        }
+        storeScenes();
     }
 
     /**
-     * Method to create the statistics scene.
+     * Method to build the map, statistics and graph scenes for a date range.
      * <p>
-     * Creates the statistics scene and stores it in the scenes map.
-     * The statistics scene is created in the main JavaFX thread, but this method should only be called once the start and
-     * end dates have been selected. In our implementation this is achieved by calling Platform.runLater() in the thread
-     * that checks for the selected dates.
+     * Each controller is prepared on the query executor. When all of them are prepared, the scenes are finished on the
+     * JavaFX Application Thread and published at once, unless a newer range has been selected in the meantime. A
+     * controller that could not be prepared, because the query executor rejected it, is prepared by beginLoading.
      */
-    private void createStatisticsScene() {
+    private void buildScenes(DateRange range, int currentGeneration) {
+        LocalDate startDate = range.getStartDate();
+        LocalDate endDate = range.getEndDate();
+        MapController mapController = new MapController(startDate, endDate);
         StatisticsController statisticsController = new StatisticsController(startDate, endDate);
-        statisticsController.beginLoading();
-        Scene statisticsScene = statisticsController.getScene();
+        GraphController graphController = new GraphController(startDate, endDate);
+        List<AbstractController> controllers = List.of(mapController, statisticsController, graphController);
 
-        SCENES.put("stats", statisticsScene);
+        CompletableFuture<?>[] preparations = new CompletableFuture<?>[controllers.size()];
+        try {
+            for (int i = 0; i < controllers.size(); i++) {
+                preparations[i] = CompletableFuture.runAsync(controllers.get(i)::prepare, QueryExecutor.getInstance());
+            }
+        } catch (RejectedExecutionException e) {
+            // beginLoading does whatever was not prepared, so the scenes can still be built. The preparations already
+            // submitted are still waited for, so beginLoading never runs on a controller that is being prepared.
+            System.out.println("Error scheduling the preparation of the scenes: " + e.getMessage());
+            for (int i = 0; i < preparations.length; i++) {
+                if (preparations[i] == null) {
+                    preparations[i] = CompletableFuture.completedFuture(null);
+                }
+            }
+        }
+
+        CompletableFuture.allOf(preparations).whenComplete((result, e) -> Platform.runLater(() -> {
+            if (e != null) {
+                System.out.println("Error preparing the scenes: " + e.getMessage());
+            }
+            if (currentGeneration != generation) {
+                return;
+            }
+            publishScenes(mapController, statisticsController, graphController);
+        }));
     }
 
     /**
-     * Method to create the graph scene.
-     * <p>
-     * Creates the graph scene and stores it in the scenes map.
-     * The graph scene is created in the main JavaFX thread, but this method should only be called once the start and
-     * end dates have been selected. In our implementation this is achieved by calling Platform.runLater() in the thread
-     * that checks for the selected dates.
+     * Method to finish building the map, statistics and graph scenes and store them in the scenes map.
+     * It must be called on the JavaFX Application Thread.
      */
-    private void createGraphScene() {
-        GraphController graphController = new GraphController(startDate, endDate);
+    private void publishScenes(MapController mapController, StatisticsController statisticsController,
+                               GraphController graphController) {
+        mapController.beginLoading();
+        statisticsController.beginLoading();
         graphController.beginLoading();
-        Scene graphScene = graphController.getScene();
 
-        SCENES.put("graph", graphScene);
+        this.mapController = mapController;
+        this.statisticsController = statisticsController;
+        this.graphController = graphController;
+        storeScenes();
+    }
+
+    /**
+     * Method to store the map, statistics and graph scenes in the scenes map.
+     */
+    private void storeScenes() {
+        SCENES.put("map", mapController.getScene());
+        SCENES.put("stats", statisticsController.getScene());
+        SCENES.put("graph", graphController.getScene());
     }
 }
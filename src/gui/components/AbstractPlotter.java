@@ -3,22 +3,37 @@ package gui.components;
 import javafx.scene.chart.Axis;
 import javafx.scene.chart.XYChart;
 
-import java.sql.ResultSet;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Abstract class for plotting data.
  * This class is used to create a plotter for a specific type of chart.
  * It contains the basic methods and attributes that are common to all types of plotters.
+ * <p>
+ * A plotter keeps its chart and series, so it can be plotted again with new data. The new points are compared with
+ * the ones already on the chart: points that are still there are updated in place, and only the points added or
+ * removed at the end change the series, so the chart is laid out incrementally rather than rebuilt. Animating hundreds
+ * of points costs more than it shows, so large series are plotted without animation.
+ * <p>
+ * The type of the x values depends on the x-axis: a String for a category axis, or a Number for a numeric one. Each
+ * plotter decides which part of a point of its SeriesData is used as the x value.
  *
+ * @param <X> the type of the x values of the chart
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.28
+ * @version 2024.04.18
  */
-public abstract class AbstractPlotter implements Plotter {
+public abstract class AbstractPlotter<X> implements Plotter {
 
-    protected final Axis xAxis;
-    protected final Axis yAxis;
-    protected final XYChart.Series series;
-    protected ResultSet data;
+    /**
+     * The largest number of points a series may have for the chart to be animated.
+     */
+    protected static final int ANIMATION_LIMIT = 100;
+
+    protected final Axis<X> xAxis;
+    protected final Axis<Number> yAxis;
+    protected final XYChart.Series<X, Number> series;
+    protected SeriesData data;
 
     /**
      * Constructor for the AbstractPlotter class.
@@ -29,23 +44,77 @@ public abstract class AbstractPlotter implements Plotter {
      * @param yAxis  the y-axis of the chart
      * @param yLabel the label of the y-axis
      */
-    protected AbstractPlotter(Axis xAxis, String xLabel, Axis yAxis, String yLabel) {
+    protected AbstractPlotter(Axis<X> xAxis, String xLabel, Axis<Number> yAxis, String yLabel) {
         this.xAxis = xAxis;
         this.xAxis.setLabel(xLabel);
 
         this.yAxis = yAxis;
         this.yAxis.setLabel(yLabel);
 
-        series = new XYChart.Series();
+        series = new XYChart.Series<>();
+        data = SeriesData.empty();
     }
 
     /**
      * Define the data to be plotted.
      *
-     * @param data a ResultSet object containing the data to be plotted
+     * @param data a SeriesData object containing the data to be plotted
      */
     @Override
-    public void setData(ResultSet data) {
+    public void setData(SeriesData data) {
         this.data = data;
     }
+
+    /**
+     * Change the label of the y-axis, for when the plotter is reused for another statistic.
+     *
+     * @param yLabel the label of the y-axis
+     */
+    public void setYLabel(String yLabel) {
+        this.yAxis.setLabel(yLabel);
+    }
+
+    /**
+     * Get the x value of a point of the data to be plotted.
+     *
+     * @param index the index of the point
+     * @return the x value of the point on the chart
+     */
+    protected abstract X xValue(int index);
+
+    /**
+     * Update the points of the series to the data to be plotted, and add the series to the chart if it is not
+     * already on it. It must be called on the JavaFX Application Thread.
+     * <p>
+     * Points at the same position as before keep their XYChart.Data object, and only have the values that changed
+     * set. Points beyond the end of the old series are added in a single change, and points beyond the end of the new
+     * series are removed in a single change.
+     *
+     * @param chart the chart to plot the series on
+     */
+    protected void fillSeries(XYChart<X, Number> chart) {
+        chart.setAnimated(data.size() <= ANIMATION_LIMIT);
+        List<XYChart.Data<X, Number>> points = series.getData();
+        int kept = Math.min(points.size(), data.size());
+
+        for (int i = 0; i < kept; i++) {
+            XYChart.Data<X, Number> point = points.get(i);
+            X xValue = this.xValue(i);
+            if (!Objects.equals(xValue, point.getXValue())) {
+                point.setXValue(xValue);
+            }
+            if (point.getYValue() == null || point.getYValue().doubleValue() != data.getValue(i)) {
+                point.setYValue(data.getValue(i));
+            }
+        }
+        if (points.size() > kept) {
+            series.getData().remove(kept, points.size());
+        } else if (data.size() > kept) {
+            series.getData().addAll(data.toChartData(kept, data.size(), this::xValue));
+        }
+
+        if (!chart.getData().contains(series)) {
+            chart.getData().add(series);
+        }
+    }
 }
@@ -3,73 +3,119 @@ package gui.components;
 import javafx.scene.image.Image;
 import javafx.scene.text.Font;
 
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Class to load images for the application.
  * <p>
- * Images are loaded as Image objects and are stored as in global fields. This allows the images to be
- * accessed from any class in the application.
+ * Each image is named by a global field, and is loaded from the classpath the first time a view asks for it at a given
+ * size. The image is decoded in the background straight to the size the view shows it at, rather than at the full
+ * size of the file, so a view never waits for an image to load and never keeps more pixels than it draws. The view
+ * shows the image as soon as it has been decoded.
  * <p>
- * The images are loaded only once, and then stored in memory for the lifetime of the application.
+ * Each image is loaded only once for each size, and then stored in memory for the lifetime of the application.
  * This reduces the amount of memory used by the application and also reduces the overhead due to construction
  * and garbage collection of Image objects.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.28
+ * @version 2024.04.23
  */
 public class AssetLoader {
 
     /**
-     * Image object for Welcome background.
+     * File name of the Welcome background.
      */
-    public static final Image WELCOME_BACKGROUND = new Image("images/welcome_background.png");
+    public static final String WELCOME_BACKGROUND = "welcome_background.png";
     /**
-     * Image object for the Statistics background.
+     * File name of the Statistics background.
      */
-    public static final Image STATS_BACKGROUND = new Image("images/stats_background.png");
+    public static final String STATS_BACKGROUND = "stats_background.png";
     /**
-     * Image object for the Graph background.
+     * File name of the Graph background.
      */
-    public static final Image GRAPH_BACKGROUND = new Image("images/graph_background.png");
+    public static final String GRAPH_BACKGROUND = "graph_background.png";
     /**
-     * Image object for the London Map frame.
+     * File name of the London Map frame.
      */
-    public static final Image MAP_FRAME = new Image("images/map_frame.png");
+    public static final String MAP_FRAME = "map_frame.png";
     /**
-     * Image object for the title on the main screen.
+     * File name of the title on the main screen.
      */
-    public static final Image WELCOME_TITLE = new Image("images/welcome_title.png");
+    public static final String WELCOME_TITLE = "welcome_title.png";
     /**
-     * Image object for "enter valid date range" subtitle on the main screen.
+     * File name of the "enter valid date range" subtitle on the main screen.
      */
-    public static final Image ENTER_DATE_RANGE = new Image("images/enter_date_range.png");
+    public static final String ENTER_DATE_RANGE = "enter_date_range.png";
     /**
-     * Image object for "click here to start" subtitle on the main screen.
+     * File name of the "click here to start" subtitle on the main screen.
      */
-    public static final Image PRESS_TO_START = new Image("images/click_to_begin.png");
+    public static final String PRESS_TO_START = "click_to_begin.png";
     /**
-     * Image object for the "invalid date range :( ) text on the main screen.
+     * File name of the "invalid date range :( ) text on the main screen.
      */
-    public static final Image INVALID_DATE_RANGE = new Image("images/invalid_date_range.png");
+    public static final String INVALID_DATE_RANGE = "invalid_date_range.png";
     /**
-     * Image for the "select location" text.
+     * File name of the "select location" text.
      */
-    public static final Image SELECT_LOCATION = new Image("images/select_location.png");
+    public static final String SELECT_LOCATION = "select_location.png";
     /**
-     * Image object for the right arrow.
+     * File name of the right arrow.
      */
-    public static final Image ARROW = new Image("images/forward_arrow.png");
+    public static final String ARROW = "forward_arrow.png";
     /**
-     * Image object for character on the Welcome screen.
+     * File name of the character on the Welcome screen.
      */
-    public static final Image CHARACTER = new Image("images/character.gif");
+    public static final String CHARACTER = "character.gif";
     /**
-     * Image object for the small character
+     * File name of the small character
      */
-    public static final Image SMALL_CHARACTER = new Image("images/small_character.gif");
+    public static final String SMALL_CHARACTER = "small_character.gif";
+
+    private static final Map<String, Image> IMAGES = new ConcurrentHashMap<>();
 
     static {
         // The font must be loaded in a static block so that it is loaded only once.
         // This must be loaded so that the CSS styling works correctly.
-        Font.loadFont("file:/home/enzozbest/IdeaProjects/ppacoursework4/src/resources/fonts/font.ttf", 30);
+        URL font = AssetLoader.class.getResource("../../resources/fonts/font.ttf");
+        if (font == null) {
+            System.out.println("Error loading the font! It could not be found on the classpath.");
+        } else {
+            Font.loadFont(font.toExternalForm(), 30);
+        }
+    }
+
+    /**
+     * Constructor for the AssetLoader class. It only has static fields and methods, so it is never created.
+     */
+    private AssetLoader() {
+    }
+
+    /**
+     * Get an image at the size it is shown at, loading it in the background the first time it is asked for at that
+     * size. Can be called from any thread.
+     *
+     * @param name          the file name of the image, one of the fields of this class.
+     * @param width         the width the image is shown at.
+     * @param height        the height the image is shown at.
+     * @param preserveRatio whether the image keeps its aspect ratio, fitting within the width and height.
+     * @return the image, which may still be loading, or null if there is no image with that name.
+     */
+    public static Image getImage(String name, double width, double height, boolean preserveRatio) {
+        String key = name + "@" + width + "x" + height + (preserveRatio ? ":preserveRatio" : "");
+        return IMAGES.computeIfAbsent(key, ignored -> loadImage(name, width, height, preserveRatio));
+    }
+
+    /**
+     * Start loading an image from the classpath in the background, decoded at the size given.
+     */
+    private static Image loadImage(String name, double width, double height, boolean preserveRatio) {
+        URL url = AssetLoader.class.getResource("../../resources/images/" + name);
+        if (url == null) {
+            System.out.println("Error loading the image " + name + "! It could not be found on the classpath.");
+            return null;
+        }
+        return new Image(url.toExternalForm(), width, height, preserveRatio, true, true);
     }
 }
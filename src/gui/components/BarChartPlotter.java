@@ -3,21 +3,19 @@ package gui.components;
 import javafx.scene.chart.Axis;
 import javafx.scene.chart.BarChart;
 import javafx.scene.chart.Chart;
-import javafx.scene.chart.XYChart;
-
-import java.sql.SQLException;
+import utils.sql.queries.QueryResult;
 
 /**
  * This class is used to plot a bar chart.
  * <p>
  * The BarChartPlotter class is used to plot a bar chart with the data passed to it.
- * The data is passed to the plotter as a ResultSet, and the plot method plots the bar chart.
- * The bar chart is then returned to the caller.
+ * The data is read from a QueryResult into a SeriesData object with the prepare method, on a worker thread, and passed
+ * to the plotter. The plot method then plots the bar chart, which is returned to the caller.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.18
  */
-public class BarChartPlotter extends AbstractPlotter {
+public class BarChartPlotter extends AbstractPlotter<String> {
 
     private final BarChart<String, Number> chart;
 
@@ -34,24 +32,39 @@ public class BarChartPlotter extends AbstractPlotter {
         this.chart = new BarChart<>(xAxis, yAxis);
     }
 
+    /**
+     * This method reads the average statistic of each borough from the result of a query into a series, labelled by
+     * borough. It does not use any JavaFX objects, so it can be called on any thread.
+     *
+     * @param result the result of the query, with the borough and average_statistic columns
+     * @return the series to be plotted
+     */
+    public static SeriesData prepare(QueryResult result) {
+        return SeriesData.from(result, row -> result.getString(row, "borough"),
+                row -> result.getInt(row, "average_statistic"));
+    }
+
+    /**
+     * The bars are labelled by borough, so the x value of a point is its label.
+     *
+     * @param index the index of the point
+     * @return the label of the point
+     */
+    @Override
+    protected String xValue(int index) {
+        return super.data.getLabel(index);
+    }
+
     /**
      * This method is used to plot the data as a bar chart.
-     * It iterates over the ResultSet and adds each piece of data to the plot.
+     * It updates the points already on the plot in place, and adds or removes the rest in a single change.
+     * The same chart is returned every time.
      *
      * @return the chart with the data plotted
      */
     @Override
     public Chart plot() {
-        try {
-            while (data.next()) {
-                super.series.getData().add(new XYChart.Data<>(data.getString("borough"),
-                        data.getInt("average_statistic")));
-            }
-        } catch (SQLException | NullPointerException e) {
-            System.out.println("The data passed to the plotter is null!" + e.getMessage() + e.getCause() + e.getStackTrace());
-        }
-
-        this.chart.getData().add(super.series);
+        super.fillSeries(this.chart);
 
         return this.chart;
     }
@@ -0,0 +1,240 @@
+package gui.components;
+
+import javafx.scene.shape.SVGPath;
+import utils.Simplifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class to keep the outlines of the London boroughs drawn on the map.
+ * <p>
+ * The outlines are read from the london_boroughs_rough.coords file on the classpath the first time they are needed,
+ * and kept for as long as the application runs. Each line of the file holds the name of a borough and the coordinates
+ * of its outline, separated by a colon. The coordinates are parsed once into an array of floats per borough, and the
+ * SVG path of each outline is built from them once, so a new map scene only has to create its nodes.
+ * <p>
+ * Each outline is also simplified with the Douglas-Peucker algorithm at several tolerances when it is read, giving a
+ * few levels of detail. Level 0 is the full outline, and each level after it drops more of the points that would be
+ * too close together to see. A map drawn at a small scale uses the coarsest level whose simplification is less than
+ * half a pixel on screen, which looks the same as the full outline but has far fewer points to draw.
+ * <p>
+ * The boroughs are kept in the order they appear in the file, which is the order they are drawn in.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.22
+ */
+public class BoroughGeometry {
+
+    /**
+     * The tolerance of each level of detail, in the coordinates of the outlines, from the full outline to the coarsest.
+     */
+    private static final double[] TOLERANCES = {0, 0.1, 0.25, 0.5, 1};
+
+    /**
+     * The largest distance, in pixels, a simplified outline may be from the full one and still look the same.
+     */
+    private static final double LOSSLESS_PIXELS = 0.5;
+
+    private static BoroughGeometry instance;
+    private final List<Map<String, float[]>> levels;
+    private final List<Map<String, String>> paths;
+
+    /**
+     * Constructor for the BoroughGeometry class. It reads and parses the coordinates file.
+     */
+    private BoroughGeometry() {
+        levels = new ArrayList<>();
+        paths = new ArrayList<>();
+        for (int level = 0; level < TOLERANCES.length; level++) {
+            levels.add(new LinkedHashMap<>());
+            paths.add(new LinkedHashMap<>());
+        }
+        this.readCoordinates();
+    }
+
+    /**
+     * Method to get the instance of the BoroughGeometry class, reading the outlines the first time it is called.
+     * It can be called from any thread, so the file can be read before the map is drawn.
+     *
+     * @return the instance of the BoroughGeometry class.
+     */
+    public static synchronized BoroughGeometry getInstance() {
+        if (instance == null) {
+            instance = new BoroughGeometry();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the names of the boroughs, in the order they are drawn.
+     */
+    public Set<String> getBoroughNames() {
+        return Collections.unmodifiableSet(levels.get(0).keySet());
+    }
+
+    /**
+     * @return the number of levels of detail of each outline.
+     */
+    public int getLevelCount() {
+        return TOLERANCES.length;
+    }
+
+    /**
+     * Find the coarsest level of detail that looks the same as the full outlines at a scale.
+     *
+     * @param pixelsPerUnit the number of pixels on screen per unit of the coordinates of the outlines.
+     * @return the level of detail to draw the outlines at.
+     */
+    public int levelFor(double pixelsPerUnit) {
+        int level = 0;
+        while (level + 1 < TOLERANCES.length && TOLERANCES[level + 1] * pixelsPerUnit <= LOSSLESS_PIXELS) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Get the outline of a borough, as alternating x and y coordinates. The array is shared, so it must not be changed.
+     *
+     * @param boroughName the name of the borough.
+     * @return the coordinates of the outline, or null if there is no borough with that name.
+     */
+    public float[] getCoordinates(String boroughName) {
+        return getCoordinates(boroughName, 0);
+    }
+
+    /**
+     * Get the outline of a borough at a level of detail, as alternating x and y coordinates.
+     * The array is shared, so it must not be changed.
+     *
+     * @param boroughName the name of the borough.
+     * @param level       the level of detail, where 0 is the full outline.
+     * @return the coordinates of the outline, or null if there is no borough with that name.
+     */
+    public float[] getCoordinates(String boroughName, int level) {
+        return levels.get(level).get(boroughName);
+    }
+
+    /**
+     * Get the outline of every borough, in the order they are drawn.
+     * The arrays are shared, so they must not be changed.
+     *
+     * @return the coordinates of the outline of each borough, by the name of the borough.
+     */
+    public Map<String, float[]> getOutlines() {
+        return getOutlines(0);
+    }
+
+    /**
+     * Get the outline of every borough at a level of detail, in the order they are drawn.
+     * The arrays are shared, so they must not be changed.
+     *
+     * @param level the level of detail, where 0 is the full outline.
+     * @return the coordinates of the outline of each borough, by the name of the borough.
+     */
+    public Map<String, float[]> getOutlines(int level) {
+        return Collections.unmodifiableMap(levels.get(level));
+    }
+
+    /**
+     * Create a new node drawing the outline of a borough.
+     *
+     * @param boroughName the name of the borough.
+     * @return the outline of the borough, or an empty path if there is no borough with that name.
+     */
+    public SVGPath createPath(String boroughName) {
+        return createPath(boroughName, 0);
+    }
+
+    /**
+     * Create a new node drawing the outline of a borough at a level of detail.
+     *
+     * @param boroughName the name of the borough.
+     * @param level       the level of detail, where 0 is the full outline.
+     * @return the outline of the borough, or an empty path if there is no borough with that name.
+     */
+    public SVGPath createPath(String boroughName, int level) {
+        SVGPath path = new SVGPath();
+        path.setContent(getPath(boroughName, level));
+        return path;
+    }
+
+    /**
+     * Get the SVG path of the outline of a borough at a level of detail, to change the level of an existing node.
+     *
+     * @param boroughName the name of the borough.
+     * @param level       the level of detail, where 0 is the full outline.
+     * @return the SVG path of the outline, or an empty path if there is no borough with that name.
+     */
+    public String getPath(String boroughName, int level) {
+        return paths.get(level).getOrDefault(boroughName, "");
+    }
+
+    /**
+     * Read the coordinates file from the classpath, parsing the outline of every borough in it.
+     */
+    private void readCoordinates() {
+        InputStream stream = getClass().getResourceAsStream("../../resources/map/london_boroughs_rough.coords");
+        if (stream == null) {
+            System.out.println("Error reading the coordinates file! It could not be found on the classpath.");
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(':');
+                if (separator < 0) {
+                    continue;
+                }
+                String boroughName = line.substring(0, separator);
+                float[] outline = parseCoordinates(line.substring(separator + 1));
+                for (int level = 0; level < TOLERANCES.length; level++) {
+                    float[] simplified = Simplifier.douglasPeucker(outline, TOLERANCES[level]);
+                    levels.get(level).put(boroughName, simplified);
+                    paths.get(level).put(boroughName, toPath(simplified));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Error reading the coordinates file! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse the coordinates of an outline, which are separated by commas, spaces, or both.
+     */
+    private static float[] parseCoordinates(String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) {
+            return new float[0];
+        }
+        String[] numbers = trimmed.split("[,\\s]+");
+        float[] outline = new float[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            outline[i] = Float.parseFloat(numbers[i]);
+        }
+        return outline;
+    }
+
+    /**
+     * Build the SVG path of an outline, which moves to the first point, draws a line through the others and closes.
+     */
+    private static String toPath(float[] outline) {
+        StringBuilder path = new StringBuilder(outline.length * 8);
+        path.append('M');
+        for (float coordinate : outline) {
+            path.append(coordinate).append(' ');
+        }
+        return path.append('Z').toString();
+    }
+}
@@ -0,0 +1,248 @@
+package gui.components;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.skin.VirtualFlow;
+import utils.CovidData;
+import utils.sql.queries.Query;
+import utils.sql.queries.QueryCache;
+import utils.sql.queries.concurrent.QueryExecutor;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This class feeds the rows of a borough into a TableView one page at a time, for date ranges too long to load at once.
+ * <p>
+ * Pages are fetched with keyset pagination on (borough, date): each page asks for the rows after the last date shown,
+ * or before the first, rather than skipping an offset, so every page costs the same however far into the range it is.
+ * The next page is fetched as the user scrolls towards the end of the rows held, and the previous one as they scroll
+ * back towards the start.
+ * <p>
+ * Only a bounded window of pages is kept in the table. When a page is added at one end of a full window, the page at
+ * the other end is evicted, and the table is scrolled by the number of rows removed so the rows on screen do not move.
+ * <p>
+ * The table only holds part of the range at any time, so sorting by column is disabled while it is paged.
+ * Every method of this class must be called on the JavaFX Application Thread.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.25
+ */
+public class BoroughPager {
+
+    /**
+     * How close to either end of the scroll range, as a fraction of it, the user must scroll to fetch another page.
+     */
+    private static final double PREFETCH_THRESHOLD = 0.1;
+
+    private final TableView<CovidData> tableView;
+    private final String boroughName;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final int pageSize;
+    private final int maxPages;
+    private final ObservableList<CovidData> rows;
+    private final Deque<Integer> pageSizes;
+    private boolean loading;
+    private boolean reachedStart;
+    private boolean reachedEnd;
+
+    /**
+     * Constructor for the BoroughPager class.
+     *
+     * @param tableView   the table to show the rows in.
+     * @param boroughName the name of the borough.
+     * @param startDate   the first date of the range.
+     * @param endDate     the last date of the range.
+     * @param pageSize    the number of rows in a page.
+     * @param maxPages    the largest number of pages held in the table at once.
+     */
+    public BoroughPager(TableView<CovidData> tableView, String boroughName, LocalDate startDate, LocalDate endDate,
+                        int pageSize, int maxPages) {
+        this.tableView = tableView;
+        this.boroughName = boroughName;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.rows = FXCollections.observableArrayList();
+        this.pageSizes = new ArrayDeque<>();
+        this.reachedStart = true;
+    }
+
+    /**
+     * Show the first page of rows in the table, and fetch further pages as the user scrolls.
+     */
+    public void start() {
+        tableView.setItems(rows);
+        for (TableColumn<CovidData, ?> column : tableView.getColumns()) {
+            column.setSortable(false);
+        }
+
+        if (tableView.getSkin() != null) {
+            this.listenToScrolling();
+        } else {
+            tableView.skinProperty().addListener((observable, oldSkin, newSkin) -> this.listenToScrolling());
+        }
+        this.fetchNext();
+    }
+
+    /**
+     * Fetch another page whenever the vertical scroll bar of the table nears either end.
+     */
+    private void listenToScrolling() {
+        // The scroll bars are created by the skin once the table has been laid out.
+        Platform.runLater(() -> {
+            for (Node node : tableView.lookupAll(".scroll-bar")) {
+                if (node instanceof ScrollBar bar && bar.getOrientation() == Orientation.VERTICAL) {
+                    bar.valueProperty().addListener((observable, oldValue, newValue) -> this.onScroll(bar));
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetch the next or previous page if the user has scrolled close enough to the end or start of the rows held.
+     */
+    private void onScroll(ScrollBar bar) {
+        double range = bar.getMax() - bar.getMin();
+        if (range <= 0) {
+            return;
+        }
+        double position = (bar.getValue() - bar.getMin()) / range;
+        if (position >= 1 - PREFETCH_THRESHOLD) {
+            this.fetchNext();
+        } else if (position <= PREFETCH_THRESHOLD) {
+            this.fetchPrevious();
+        }
+    }
+
+    /**
+     * Fetch the page of rows after the last row held, unless one is already being fetched or there are no more.
+     */
+    private void fetchNext() {
+        if (loading || reachedEnd) {
+            return;
+        }
+        LocalDate after = rows.isEmpty() ? startDate.minusDays(1) : rows.get(rows.size() - 1).date();
+        Query query = new Query("SELECT * FROM covid_london WHERE borough = ? AND `date` > ? AND `date` <= ? " +
+                "ORDER BY borough, `date` ASC LIMIT ?", boroughName, after, endDate, pageSize)
+                .withLocalPlan(table -> table.boroughRows(boroughName, after.plusDays(1), endDate, pageSize, false));
+        this.fetch(query, false);
+    }
+
+    /**
+     * Fetch the page of rows before the first row held, unless one is already being fetched or there are no more.
+     */
+    private void fetchPrevious() {
+        if (loading || reachedStart || rows.isEmpty()) {
+            return;
+        }
+        LocalDate before = rows.get(0).date();
+        Query query = new Query("SELECT * FROM covid_london WHERE borough = ? AND `date` < ? AND `date` >= ? " +
+                "ORDER BY borough DESC, `date` DESC LIMIT ?", boroughName, before, startDate, pageSize)
+                .withLocalPlan(table -> table.boroughRows(boroughName, startDate, before.minusDays(1), pageSize, true));
+        this.fetch(query, true);
+    }
+
+    /**
+     * Run the query for a page on the query executor, and add the page to the table once it has been read.
+     * <p>
+     * If the page could not be read, the table is left as it is, and the page is asked for again the next time the
+     * table is scrolled that way.
+     */
+    private void fetch(Query query, boolean previous) {
+        loading = true;
+        try {
+            QueryExecutor.getInstance().execute(() -> {
+                List<CovidData> fetched;
+                try {
+                    fetched = CovidData.listOf(QueryCache.getInstance().getOrExecute(query));
+                } catch (SQLException e) {
+                    System.out.println("Error fetching a page of the borough's records: " + e.getMessage());
+                    Platform.runLater(() -> loading = false);
+                    return;
+                }
+                Platform.runLater(() -> {
+                    if (previous) {
+                        this.prependPage(fetched);
+                    } else {
+                        this.appendPage(fetched);
+                    }
+                    loading = false;
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            System.out.println("Error scheduling background task: " + e.getMessage());
+            loading = false;
+        }
+    }
+
+    /**
+     * Add a page after the rows held, evicting the first page if the window is full.
+     */
+    private void appendPage(List<CovidData> page) {
+        reachedEnd = page.size() < pageSize;
+        if (page.isEmpty()) {
+            return;
+        }
+        rows.addAll(page);
+        pageSizes.addLast(page.size());
+
+        if (pageSizes.size() > maxPages) {
+            int evicted = pageSizes.removeFirst();
+            int firstVisible = this.firstVisibleIndex();
+            rows.remove(0, evicted);
+            reachedStart = false;
+            tableView.scrollTo(Math.max(0, firstVisible - evicted));
+        }
+    }
+
+    /**
+     * Add a page, read latest first, before the rows held, evicting the last page if the window is full.
+     */
+    private void prependPage(List<CovidData> page) {
+        reachedStart = page.size() < pageSize;
+        if (page.isEmpty()) {
+            return;
+        }
+        List<CovidData> ordered = new ArrayList<>(page);
+        Collections.reverse(ordered);
+        int firstVisible = this.firstVisibleIndex();
+        rows.addAll(0, ordered);
+        pageSizes.addFirst(ordered.size());
+        tableView.scrollTo(firstVisible + ordered.size());
+
+        if (pageSizes.size() > maxPages) {
+            int evicted = pageSizes.removeLast();
+            rows.remove(rows.size() - evicted, rows.size());
+            reachedEnd = false;
+        }
+    }
+
+    /**
+     * Find the index of the first row visible in the table.
+     */
+    private int firstVisibleIndex() {
+        if (tableView.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) {
+            IndexedCell<?> cell = flow.getFirstVisibleCell();
+            if (cell != null) {
+                return cell.getIndex();
+            }
+        }
+        return 0;
+    }
+}
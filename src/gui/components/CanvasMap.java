@@ -0,0 +1,401 @@
+package gui.components;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Scale;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A class to draw the regions of a map onto a single Canvas, for maps with too many regions to give each its own node.
+ * <p>
+ * Every region of the map is drawn onto one Canvas, instead of being an SVGPath node that has to be styled and laid out
+ * on its own. The region under the cursor is found with a SpatialGrid, which narrows the search to the few regions
+ * near the cursor before testing whether the cursor is inside their outlines.
+ * <p>
+ * When a region changes, because it is hovered, selected or given another colour, only the area it covers is cleared
+ * and drawn again, along with the other regions overlapping that area. Changes made during the same pulse are drawn
+ * together, so a map of thousands of regions can follow the mouse at the frame rate.
+ * <p>
+ * The regions are drawn in the order they are given, with the hovered and selected regions outlined in black on top.
+ * Coordinates are those of the outlines, so the canvas can be placed in the same group as SVGPath outlines would be.
+ * When that group is zoomed in, the resolution of the canvas can be raised to match, so the map stays sharp, and the
+ * outlines can be swapped for more or less detailed ones without building the map again.
+ * It must only be used on the JavaFX Application Thread.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.22
+ */
+public class CanvasMap {
+
+    /**
+     * How far beyond the outline of a region its stroke may reach, in the coordinates of the outlines.
+     */
+    private static final double STROKE_MARGIN = 2;
+
+    /**
+     * The fraction of regions that, once changed, makes drawing the whole map again cheaper than drawing each area.
+     */
+    private static final double FULL_REDRAW_FRACTION = 0.25;
+
+    /**
+     * The largest width or height of the canvas in pixels, which limits how far its resolution can be raised.
+     */
+    private static final double MAX_CANVAS_PIXELS = 4096;
+
+    private static final Color DEFAULT_FILL = Color.BLACK;
+    private static final Color STROKE = Color.SILVER;
+    private static final Color HIGHLIGHT_STROKE = Color.BLACK;
+
+    private final Canvas canvas;
+    private final String[] names;
+    private final float[][] outlines;
+    private final Map<String, Integer> indexes;
+    private final double[] minXs;
+    private final double[] minYs;
+    private final double[] maxXs;
+    private final double[] maxYs;
+    private final Color[] fills;
+    private final SpatialGrid grid;
+    private final double originX;
+    private final double originY;
+    private final double width;
+    private final double height;
+    private final Scale resolution;
+    private final BitSet dirty;
+    private boolean redrawScheduled;
+    private int hovered;
+    private int selected;
+    private Consumer<String> onRegionHovered;
+    private Consumer<String> onRegionClicked;
+
+    /**
+     * Constructor for the CanvasMap class.
+     *
+     * @param regions the outline of each region, as alternating x and y coordinates, by the name of the region, in the
+     *                order they are drawn.
+     */
+    public CanvasMap(Map<String, float[]> regions) {
+        int count = regions.size();
+        names = new String[count];
+        outlines = new float[count][];
+        indexes = new HashMap<>();
+        minXs = new double[count];
+        minYs = new double[count];
+        maxXs = new double[count];
+        maxYs = new double[count];
+        fills = new Color[count];
+        Arrays.fill(fills, DEFAULT_FILL);
+
+        int region = 0;
+        for (Map.Entry<String, float[]> entry : regions.entrySet()) {
+            names[region] = entry.getKey();
+            outlines[region] = entry.getValue();
+            indexes.put(entry.getKey(), region);
+            this.measure(region);
+            region++;
+        }
+        grid = new SpatialGrid(minXs, minYs, maxXs, maxYs);
+
+        double left = count == 0 ? 0 : Arrays.stream(minXs).min().getAsDouble() - STROKE_MARGIN;
+        double top = count == 0 ? 0 : Arrays.stream(minYs).min().getAsDouble() - STROKE_MARGIN;
+        double right = count == 0 ? 0 : Arrays.stream(maxXs).max().getAsDouble() + STROKE_MARGIN;
+        double bottom = count == 0 ? 0 : Arrays.stream(maxYs).max().getAsDouble() + STROKE_MARGIN;
+        originX = left;
+        originY = top;
+        width = right - left;
+        height = bottom - top;
+        canvas = new Canvas(width, height);
+        canvas.setLayoutX(left);
+        canvas.setLayoutY(top);
+        // The canvas is shrunk back to the size of the map, so a canvas of a higher resolution takes the same space.
+        resolution = new Scale(1, 1, 0, 0);
+        canvas.getTransforms().add(resolution);
+
+        dirty = new BitSet(count);
+        hovered = -1;
+        selected = -1;
+        canvas.setOnMouseMoved(event -> this.hover(this.regionAt(event)));
+        canvas.setOnMouseExited(event -> this.hover(-1));
+        canvas.setOnMouseClicked(event -> {
+            // A click at the end of a drag, such as one panning the map, does not select a region.
+            if (event.isStillSincePress()) {
+                this.click(this.regionAt(event));
+            }
+        });
+
+        this.drawArea(left, top, right, bottom);
+    }
+
+    /**
+     * @return the canvas the map is drawn on.
+     */
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    /**
+     * @return the number of regions on the map.
+     */
+    public int getRegionCount() {
+        return names.length;
+    }
+
+    /**
+     * Set the number of pixels the canvas has per unit of the coordinates of the outlines, so it can match the scale
+     * the map is shown at. The resolution is limited so the canvas never grows beyond a few thousand pixels a side.
+     * The whole map is drawn again on the next pulse if it changes.
+     *
+     * @param pixelsPerUnit the number of pixels per unit.
+     */
+    public void setResolution(double pixelsPerUnit) {
+        double limit = MAX_CANVAS_PIXELS / Math.max(1, Math.max(width, height));
+        double scale = Math.max(Double.MIN_NORMAL, Math.min(pixelsPerUnit, limit));
+        if (scale == resolution.getX()) {
+            return;
+        }
+        canvas.setWidth(width * scale);
+        canvas.setHeight(height * scale);
+        resolution.setX(1 / scale);
+        resolution.setY(1 / scale);
+        this.markAllDirty();
+    }
+
+    /**
+     * Swap the outline of every region for another with the same bounds or smaller, such as a more or less detailed
+     * version of the same outline. The whole map is drawn again on the next pulse.
+     *
+     * @param regions the new outline of each region, as alternating x and y coordinates, by the name of the region.
+     *                Regions without a new outline keep their old one.
+     */
+    public void setOutlines(Map<String, float[]> regions) {
+        for (Map.Entry<String, float[]> entry : regions.entrySet()) {
+            Integer region = indexes.get(entry.getKey());
+            if (region != null) {
+                outlines[region] = entry.getValue();
+            }
+        }
+        this.markAllDirty();
+    }
+
+    /**
+     * Set the colour a region is filled with. The region is drawn again on the next pulse.
+     *
+     * @param name   the name of the region.
+     * @param colour the colour to fill it with.
+     */
+    public void setFill(String name, Color colour) {
+        Integer region = indexes.get(name);
+        if (region == null || fills[region].equals(colour)) {
+            return;
+        }
+        fills[region] = colour;
+        this.markDirty(region);
+    }
+
+    /**
+     * Set the action run when the cursor moves onto another region, which is given the name of the region, or null
+     * when the cursor leaves every region.
+     *
+     * @param onRegionHovered the action to run.
+     */
+    public void setOnRegionHovered(Consumer<String> onRegionHovered) {
+        this.onRegionHovered = onRegionHovered;
+    }
+
+    /**
+     * Set the action run when a region is clicked, which is given the name of the region.
+     *
+     * @param onRegionClicked the action to run.
+     */
+    public void setOnRegionClicked(Consumer<String> onRegionClicked) {
+        this.onRegionClicked = onRegionClicked;
+    }
+
+    /**
+     * Find the bounding box of a region.
+     */
+    private void measure(int region) {
+        float[] outline = outlines[region];
+        double left = Double.POSITIVE_INFINITY;
+        double top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        double bottom = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i + 1 < outline.length; i += 2) {
+            left = Math.min(left, outline[i]);
+            right = Math.max(right, outline[i]);
+            top = Math.min(top, outline[i + 1]);
+            bottom = Math.max(bottom, outline[i + 1]);
+        }
+        if (outline.length < 2) {
+            left = top = right = bottom = 0;
+        }
+        minXs[region] = left;
+        minYs[region] = top;
+        maxXs[region] = right;
+        maxYs[region] = bottom;
+    }
+
+    /**
+     * Find the region under the cursor, or -1 if there is none. The last region drawn is on top, so it is found first.
+     */
+    private int regionAt(MouseEvent event) {
+        double x = event.getX() * resolution.getX() + originX;
+        double y = event.getY() * resolution.getY() + originY;
+        int[] candidates = grid.candidatesAt(x, y);
+        for (int i = candidates.length - 1; i >= 0; i--) {
+            int region = candidates[i];
+            if (x >= minXs[region] && x <= maxXs[region] && y >= minYs[region] && y <= maxYs[region]
+                    && contains(outlines[region], x, y)) {
+                return region;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether a point is inside an outline, by counting how many of its edges a ray from the point crosses.
+     */
+    private static boolean contains(float[] outline, double x, double y) {
+        boolean inside = false;
+        int points = outline.length / 2;
+        for (int i = 0, j = points - 1; i < points; j = i++) {
+            double xi = outline[2 * i];
+            double yi = outline[2 * i + 1];
+            double xj = outline[2 * j];
+            double yj = outline[2 * j + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Highlight the region under the cursor, if it is not already highlighted.
+     */
+    private void hover(int region) {
+        if (region == hovered) {
+            return;
+        }
+        this.markDirty(hovered);
+        this.markDirty(region);
+        hovered = region;
+        if (onRegionHovered != null) {
+            onRegionHovered.accept(region < 0 ? null : names[region]);
+        }
+    }
+
+    /**
+     * Select the region clicked, if the click was on a region.
+     */
+    private void click(int region) {
+        if (region < 0) {
+            return;
+        }
+        this.markDirty(selected);
+        this.markDirty(region);
+        selected = region;
+        if (onRegionClicked != null) {
+            onRegionClicked.accept(names[region]);
+        }
+    }
+
+    /**
+     * Mark a region to be drawn again, and make sure the changed regions are drawn on the next pulse.
+     */
+    private void markDirty(int region) {
+        if (region < 0) {
+            return;
+        }
+        dirty.set(region);
+        if (!redrawScheduled) {
+            redrawScheduled = true;
+            Platform.runLater(this::redrawDirty);
+        }
+    }
+
+    /**
+     * Mark every region to be drawn again on the next pulse.
+     */
+    private void markAllDirty() {
+        if (names.length > 0) {
+            dirty.set(0, names.length);
+            this.markDirty(0);
+        }
+    }
+
+    /**
+     * Draw again the areas covered by every region changed since the last time.
+     */
+    private void redrawDirty() {
+        redrawScheduled = false;
+        if (dirty.cardinality() > names.length * FULL_REDRAW_FRACTION) {
+            dirty.clear();
+            this.drawArea(originX, originY, originX + width, originY + height);
+            return;
+        }
+        for (int region = dirty.nextSetBit(0); region >= 0; region = dirty.nextSetBit(region + 1)) {
+            this.drawArea(minXs[region] - STROKE_MARGIN, minYs[region] - STROKE_MARGIN,
+                    maxXs[region] + STROKE_MARGIN, maxYs[region] + STROKE_MARGIN);
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Clear an area of the map and draw again every region overlapping it, clipped to the area.
+     */
+    private void drawArea(double left, double top, double right, double bottom) {
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        graphics.save();
+        graphics.scale(1 / resolution.getX(), 1 / resolution.getY());
+        graphics.translate(-originX, -originY);
+        graphics.beginPath();
+        graphics.rect(left, top, right - left, bottom - top);
+        graphics.clip();
+        graphics.clearRect(left, top, right - left, bottom - top);
+
+        BitSet overlapping = grid.candidatesIn(left, top, right, bottom);
+        for (int region = overlapping.nextSetBit(0); region >= 0; region = overlapping.nextSetBit(region + 1)) {
+            if (maxXs[region] >= left && minXs[region] <= right && maxYs[region] >= top && minYs[region] <= bottom
+                    && region != hovered && region != selected) {
+                this.drawRegion(graphics, region, STROKE);
+            }
+        }
+        // The highlighted regions are drawn last, so their outlines are not hidden by their neighbours.
+        for (int region : new int[]{hovered, selected}) {
+            if (region >= 0 && overlapping.get(region)) {
+                this.drawRegion(graphics, region, HIGHLIGHT_STROKE);
+            }
+        }
+        graphics.restore();
+    }
+
+    /**
+     * Fill a region and stroke its outline.
+     */
+    private void drawRegion(GraphicsContext graphics, int region, Color stroke) {
+        float[] outline = outlines[region];
+        if (outline.length < 2) {
+            return;
+        }
+        graphics.beginPath();
+        graphics.moveTo(outline[0], outline[1]);
+        for (int i = 2; i + 1 < outline.length; i += 2) {
+            graphics.lineTo(outline[i], outline[i + 1]);
+        }
+        graphics.closePath();
+        graphics.setFill(fills[region]);
+        graphics.fill();
+        graphics.setStroke(stroke);
+        graphics.setLineWidth(1);
+        graphics.stroke();
+    }
+}
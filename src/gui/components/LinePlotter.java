@@ -3,56 +3,298 @@ package gui.components;
 import javafx.scene.chart.Axis;
 import javafx.scene.chart.Chart;
 import javafx.scene.chart.LineChart;
-import javafx.scene.chart.XYChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.util.StringConverter;
+import utils.store.TimeSeriesPyramid;
+import utils.store.TimeSeriesPyramid.Aggregate;
+import utils.store.TimeSeriesPyramid.Granularity;
 
-import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 
 /**
  * A class to plot line charts.
  * <p>
  * This class extends the AbstractPlotter class and implements the plot method to plot a line chart.
- * The LinePlotter class is used to plot a line chart with the data passed to it.
- * The data is passed to the plotter as a ResultSet, and the plot method is called to plot the line chart.
- * The line chart is then returned to the caller.
+ * The LinePlotter class is used to plot a line chart of a series over time. The x-axis is numeric, counting days since
+ * the epoch, and its ticks are labelled with dates.
+ * <p>
+ * The series is usually given as a TimeSeriesPyramid, built on a worker thread, from which the plotter reads the
+ * buckets of the granularity chosen by the user. Changing the granularity, zooming or panning only reads the pyramid
+ * again, so it never goes back to the database.
+ * <p>
+ * A line cannot show more points than the chart is pixels wide, so the buckets shown are reduced to one point per
+ * pixel with the Largest-Triangle-Three-Buckets algorithm, which keeps their spikes, and reduced again whenever the
+ * chart is resized. Scrolling over the chart zooms in or out around the cursor, dragging it pans along the range, and
+ * double-clicking it shows the whole range again. However long the range, the chart never holds more points than it
+ * is pixels wide.
+ * <p>
+ * The days shown are kept in days whatever the granularity, so changing it keeps the same days on the chart. Each
+ * granularity shows every bucket holding one of those days, including the bucket the first of them falls in, even if
+ * that bucket starts before it.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.25
  */
-public class LinePlotter extends AbstractPlotter {
+public class LinePlotter extends AbstractPlotter<Number> {
+
+    /**
+     * The number of points plotted before the chart has been laid out and its width is known.
+     */
+    private static final int DEFAULT_POINTS = 800;
+
+    /**
+     * The smallest number of days the user can zoom in to.
+     */
+    private static final int MINIMUM_WINDOW = 7;
+
+    /**
+     * How much one notch of the mouse wheel zooms in or out.
+     */
+    private static final double ZOOM_FACTOR = 1.25;
+
+    /**
+     * The number of ticks the x-axis is split into.
+     */
+    private static final int TICKS = 8;
 
-    private final LineChart<String, Number> chart;
+    private static final DateTimeFormatter TICK_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yy");
+
+    private final LineChart<Number, Number> chart;
+    private final NumberAxis timeAxis;
+    private TimeSeriesPyramid pyramid;
+    private Aggregate aggregate;
+    private Granularity granularity;
+    private SeriesData full;
+    private double firstDay;
+    private double lastDay;
+    private double windowStart;
+    private double windowEnd;
+    private double dragStartX;
+    private int plottedPoints;
 
     /**
      * Constructor for the LinePlotter class.
      *
-     * @param xAxis  the x-axis of the chart
+     * @param xAxis  the x-axis of the chart, counting days since the epoch
      * @param xLabel the label of the x-axis
      * @param yAxis  the y-axis of the chart
      * @param yLabel the label of the y-axis
      */
-    public LinePlotter(Axis<String> xAxis, String xLabel, Axis<Number> yAxis, String yLabel) {
+    public LinePlotter(NumberAxis xAxis, String xLabel, Axis<Number> yAxis, String yLabel) {
         super(xAxis, xLabel, yAxis, yLabel);
         this.chart = new LineChart<>(xAxis, yAxis);
+        this.timeAxis = xAxis;
+        this.granularity = Granularity.DAY;
+        this.aggregate = Aggregate.LAST;
+        this.full = SeriesData.empty();
+
+        timeAxis.setAutoRanging(false);
+        timeAxis.setForceZeroInRange(false);
+        timeAxis.setTickLabelFormatter(new StringConverter<>() {
+            @Override
+            public String toString(Number epochDay) {
+                return LocalDate.ofEpochDay(Math.round(epochDay.doubleValue())).format(TICK_FORMAT);
+            }
+
+            @Override
+            public Number fromString(String date) {
+                return LocalDate.parse(date, TICK_FORMAT).toEpochDay();
+            }
+        });
+
+        xAxis.widthProperty().addListener((observable, oldWidth, newWidth) -> {
+            if (chart.getData().contains(series) && this.targetPoints() != plottedPoints) {
+                this.plot();
+            }
+        });
+        chart.setOnScroll(this::zoom);
+        chart.setOnMousePressed(event -> dragStartX = event.getX());
+        chart.setOnMouseDragged(this::pan);
+        chart.setOnMouseClicked(event -> {
+            if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+                this.setWindow(firstDay, lastDay);
+            }
+        });
+    }
+
+    /**
+     * Define the series to be plotted as a pyramid, shown at the current granularity. If it covers a different range
+     * from the last one, the zoom is reset, otherwise the same days are shown, so browsing boroughs keeps the range the
+     * user zoomed in to.
+     *
+     * @param pyramid   the pyramid of the series
+     * @param aggregate how to combine the values in each bucket
+     */
+    public void setPyramid(TimeSeriesPyramid pyramid, Aggregate aggregate) {
+        this.pyramid = pyramid;
+        this.aggregate = aggregate;
+        // The range is that of the days of the series, not of the buckets, which may start before the first day.
+        TimeSeriesPyramid.Level days = pyramid.level(Granularity.DAY);
+        int size = days.size();
+        this.showSeries(this.readLevel(), size == 0 ? 0 : days.getStart(0), size == 0 ? 0 : days.getStart(size - 1));
+    }
+
+    /**
+     * Change the size of the buckets plotted. It only reads the pyramid, so the chart is plotted again straight away.
+     *
+     * @param granularity the size of the buckets
+     */
+    public void setGranularity(Granularity granularity) {
+        // The days shown are kept as they are, and only the buckets read for them change.
+        this.granularity = granularity;
+        if (pyramid != null) {
+            full = this.readLevel();
+            if (chart.getData().contains(series)) {
+                this.plot();
+            }
+        }
     }
 
     /**
-     * Plots the line chart by adding each piece of data to a Series, and then the Series to the chart.
+     * Define the full series to be plotted, with positions in days since the epoch. If it covers a different range
+     * from the last one, the zoom is reset.
+     *
+     * @param data a SeriesData object containing the data to be plotted
+     */
+    @Override
+    public void setData(SeriesData data) {
+        this.pyramid = null;
+        int size = data.size();
+        this.showSeries(data, size == 0 ? 0 : data.getPosition(0), size == 0 ? 0 : data.getPosition(size - 1));
+    }
+
+    /**
+     * Plots the line chart by reading the days shown from the series, reducing them to the width of the chart,
+     * updating the points of the Series, and adding the Series to the chart the first time. The same chart is
+     * returned every time.
      *
      * @return the line chart
      */
     @Override
     public Chart plot() {
-        try {
-            while (data.next()) {
-                super.series.getData().add(new XYChart.Data<>(data.getString("month") + "/" +
-                        data.getString("year"), data.getInt("total_deaths")));
-            }
-        } catch (SQLException | NullPointerException e) {
-            System.out.println("The data passed to the plotter is null! " + e.getMessage() + e.getCause() + e.getStackTrace());
+        plottedPoints = this.targetPoints();
+        int from;
+        int to;
+        if (pyramid != null) {
+            TimeSeriesPyramid.Level level = pyramid.level(granularity);
+            from = level.firstBucketFrom((int) Math.floor(windowStart));
+            to = level.endBucketTo((int) Math.floor(windowEnd));
+        } else {
+            from = full.firstIndexFrom(windowStart);
+            to = full.endIndexTo(windowEnd);
         }
+        super.data = full.downsample(from, to, plottedPoints);
+        // A symbol is a node per point, which is only worth it while the points are far enough apart to be seen.
+        this.chart.setCreateSymbols(super.data.size() <= ANIMATION_LIMIT);
 
-        this.chart.getData().add(super.series);
+        // The first bucket may start before the first day shown, so the axis is stretched back to include it.
+        double lowerBound = from < to ? Math.min(windowStart, full.getPosition(from)) : windowStart;
+        timeAxis.setLowerBound(lowerBound);
+        timeAxis.setUpperBound(Math.max(windowEnd, windowStart + 1));
+        timeAxis.setTickUnit(Math.max(1, Math.ceil((windowEnd - lowerBound) / TICKS)));
+        super.fillSeries(this.chart);
 
         return this.chart;
     }
-}
\ No newline at end of file
+
+    /**
+     * The points are placed by their day, so the x value of a point is its position.
+     *
+     * @param index the index of the point
+     * @return the day of the point, as the number of days since the epoch
+     */
+    @Override
+    protected Number xValue(int index) {
+        return super.data.getPosition(index);
+    }
+
+    /**
+     * Read the buckets of the current granularity from the pyramid into a series.
+     */
+    private SeriesData readLevel() {
+        TimeSeriesPyramid.Level level = pyramid.level(granularity);
+        double[] positions = new double[level.size()];
+        double[] values = new double[level.size()];
+        for (int bucket = 0; bucket < level.size(); bucket++) {
+            positions[bucket] = level.getStart(bucket);
+            values[bucket] = level.getValue(bucket, aggregate);
+        }
+        return new SeriesData(positions, values);
+    }
+
+    /**
+     * Show a new series covering the days given. If they are not the days of the last series, the zoom is reset,
+     * otherwise the same days are shown.
+     */
+    private void showSeries(SeriesData data, double first, double last) {
+        boolean sameRange = data.size() > 0 && full.size() > 0 && first == firstDay && last == lastDay;
+        this.full = data;
+        this.firstDay = first;
+        this.lastDay = last;
+        if (!sameRange) {
+            windowStart = first;
+            windowEnd = last;
+        }
+    }
+
+    /**
+     * Find the number of points the chart can show, one per pixel of the x-axis.
+     */
+    private int targetPoints() {
+        int width = (int) xAxis.getWidth();
+        return width > 0 ? width : DEFAULT_POINTS;
+    }
+
+    /**
+     * Zoom in or out around the cursor when the user scrolls over the chart.
+     */
+    private void zoom(ScrollEvent event) {
+        double length = windowEnd - windowStart;
+        double range = lastDay - firstDay;
+        if (event.getDeltaY() == 0 || range <= 0) {
+            return;
+        }
+        double cursor = xAxis.sceneToLocal(event.getSceneX(), event.getSceneY()).getX() / xAxis.getWidth();
+        cursor = Math.max(0, Math.min(1, cursor));
+
+        double scale = event.getDeltaY() > 0 ? 1 / ZOOM_FACTOR : ZOOM_FACTOR;
+        double newLength = Math.max(Math.min(MINIMUM_WINDOW, range), Math.min(range, length * scale));
+        double anchor = windowStart + cursor * length;
+        double start = Math.max(firstDay, Math.min(lastDay - newLength, anchor - cursor * newLength));
+        this.setWindow(Math.round(start), Math.round(start + newLength));
+        event.consume();
+    }
+
+    /**
+     * Move the days shown along the range when the user drags the chart.
+     */
+    private void pan(MouseEvent event) {
+        double length = windowEnd - windowStart;
+        if (xAxis.getWidth() <= 0 || length <= 0) {
+            return;
+        }
+        double days = Math.round((dragStartX - event.getX()) / xAxis.getWidth() * length);
+        if (days == 0) {
+            return;
+        }
+        dragStartX = event.getX();
+        double start = Math.max(firstDay, Math.min(lastDay - length, windowStart + days));
+        this.setWindow(start, start + length);
+    }
+
+    /**
+     * Show the days between the given days of the full series, and plot them again if they changed.
+     */
+    private void setWindow(double start, double end) {
+        if (start == windowStart && end == windowEnd) {
+            return;
+        }
+        windowStart = start;
+        windowEnd = end;
+        this.plot();
+    }
+}
@@ -2,13 +2,14 @@ package gui.components;
 
 import javafx.scene.chart.Chart;
 
-import java.sql.ResultSet;
-
 /**
  * An interface to plot charts.
+ * <p>
+ * The data is passed to a plotter as a SeriesData object, which should be prepared on a worker thread, so that the
+ * JavaFX Application Thread only has to hand the finished series to the chart.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.15
  */
 public interface Plotter {
 
@@ -24,5 +25,5 @@ public interface Plotter {
      *
      * @param data the data to be plotted
      */
-    void setData(ResultSet data);
+    void setData(SeriesData data);
 }
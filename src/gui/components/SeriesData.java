@@ -0,0 +1,212 @@
+package gui.components;
+
+import javafx.scene.chart.XYChart;
+import utils.Downsampler;
+import utils.sql.queries.QueryResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * A class to hold the points of a chart series, ready to be plotted.
+ * <p>
+ * The points are kept as arrays of primitive positions and values, along with a category label for each point on a
+ * chart with a category axis, so a series can be built from the result of a query on a worker thread, without
+ * creating any JavaFX objects. The chart is then handed the whole series at once on the JavaFX Application Thread.
+ * <p>
+ * A series of category labels uses the index of each point as its position. A series for a numeric axis, such as days
+ * since the epoch, gives each position explicitly and has no labels.
+ * <p>
+ * A SeriesData object is never changed once created, so it can be safely passed between threads.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.18
+ */
+public class SeriesData {
+
+    private final String[] labels;
+    private final double[] positions;
+    private final double[] values;
+
+    /**
+     * Constructor for the SeriesData class, for a chart with a category axis.
+     *
+     * @param labels the category label of each point.
+     * @param values the value of each point, in the same order as the labels.
+     */
+    public SeriesData(String[] labels, double[] values) {
+        this(labels, indexes(labels.length), values);
+    }
+
+    /**
+     * Constructor for the SeriesData class, for a chart with a numeric axis.
+     *
+     * @param positions the position of each point on the axis, in increasing order.
+     * @param values    the value of each point, in the same order as the positions.
+     */
+    public SeriesData(double[] positions, double[] values) {
+        this(null, positions, values);
+    }
+
+    /**
+     * Constructor for the SeriesData class.
+     */
+    private SeriesData(String[] labels, double[] positions, double[] values) {
+        if (positions.length != values.length) {
+            throw new IllegalArgumentException("Expected one value per point, but got " + positions.length +
+                    " points and " + values.length + " values");
+        }
+        this.labels = labels;
+        this.positions = positions;
+        this.values = values;
+    }
+
+    /**
+     * Create the positions of a series of category labels, which are their indexes.
+     */
+    private static double[] indexes(int length) {
+        double[] indexes = new double[length];
+        for (int i = 0; i < length; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    /**
+     * Create a series with one point per row of a query result.
+     *
+     * @param result the result of the query.
+     * @param label  the function giving the label of a row from its index.
+     * @param value  the function giving the value of a row from its index.
+     * @return the series of points.
+     */
+    public static SeriesData from(QueryResult result, IntFunction<String> label, IntToDoubleFunction value) {
+        String[] labels = new String[result.size()];
+        double[] values = new double[result.size()];
+        for (int row = 0; row < result.size(); row++) {
+            labels[row] = label.apply(row);
+            values[row] = value.applyAsDouble(row);
+        }
+        return new SeriesData(labels, values);
+    }
+
+    /**
+     * @return an empty series.
+     */
+    public static SeriesData empty() {
+        return new SeriesData(new String[0], new double[0]);
+    }
+
+    /**
+     * @return the number of points in the series.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param index the index of the point.
+     * @return the category label of the point.
+     * @throws IllegalStateException if the series is for a numeric axis.
+     */
+    public String getLabel(int index) {
+        if (labels == null) {
+            throw new IllegalStateException("The series is for a numeric axis and has no labels");
+        }
+        return labels[index];
+    }
+
+    /**
+     * @param index the index of the point.
+     * @return the position of the point on the axis.
+     */
+    public double getPosition(int index) {
+        return positions[index];
+    }
+
+    /**
+     * @param index the index of the point.
+     * @return the value of the point.
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Find the first point at or after a position.
+     *
+     * @param position the position on the axis.
+     * @return the index of the point, or the number of points if every point is before the position.
+     */
+    public int firstIndexFrom(double position) {
+        int index = Arrays.binarySearch(positions, position);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && positions[index - 1] == position) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Find the point after the last one at or before a position.
+     *
+     * @param position the position on the axis.
+     * @return the index after the last point at or before the position.
+     */
+    public int endIndexTo(double position) {
+        int index = Arrays.binarySearch(positions, position);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index < positions.length - 1 && positions[index + 1] == position) {
+            index++;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Reduce part of the series to at most the given number of points, keeping its peaks and troughs.
+     *
+     * @param from      the index of the first point to keep, inclusive.
+     * @param to        the index of the last point to keep, exclusive.
+     * @param threshold the largest number of points in the result.
+     * @return the reduced series.
+     * @see Downsampler#largestTriangleThreeBuckets(double[], double[], int, int, int)
+     */
+    public SeriesData downsample(int from, int to, int threshold) {
+        int[] kept = Downsampler.largestTriangleThreeBuckets(positions, values, from, to, threshold);
+        String[] keptLabels = labels == null ? null : new String[kept.length];
+        double[] keptPositions = new double[kept.length];
+        double[] keptValues = new double[kept.length];
+        for (int i = 0; i < kept.length; i++) {
+            if (keptLabels != null) {
+                keptLabels[i] = labels[kept[i]];
+            }
+            keptPositions[i] = positions[kept[i]];
+            keptValues[i] = values[kept[i]];
+        }
+        return new SeriesData(keptLabels, keptPositions, keptValues);
+    }
+
+    /**
+     * Create the chart data points of part of the series, to be added to a chart in a single change.
+     *
+     * @param from   the index of the first point, inclusive.
+     * @param to     the index of the last point, exclusive.
+     * @param xValue the function giving the x value of a point from its index, such as getLabel or getPosition.
+     * @param <X>    the type of the x values.
+     * @return the chart data points, in order.
+     */
+    public <X> List<XYChart.Data<X, Number>> toChartData(int from, int to, IntFunction<X> xValue) {
+        List<XYChart.Data<X, Number>> points = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            points.add(new XYChart.Data<>(xValue.apply(i), values[i]));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,137 @@
+package gui.components;
+
+import java.util.BitSet;
+
+/**
+ * A class to find the regions of a map near a point or an area quickly, however many regions there are.
+ * <p>
+ * The bounding box of the map is split into a grid of equal cells, roughly as many as there are regions, and each cell
+ * lists the regions whose bounding boxes overlap it. Finding the regions under a point only has to look at the few
+ * regions listed in its cell, rather than at every region of the map.
+ * <p>
+ * Regions are identified by their index, which is also the order they are drawn in. A SpatialGrid is never changed
+ * once built.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.21
+ */
+public class SpatialGrid {
+
+    private static final int[] NO_REGIONS = new int[0];
+
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    private final int[][] cells;
+
+    /**
+     * Constructor for the SpatialGrid class.
+     *
+     * @param minXs the smallest x coordinate of each region.
+     * @param minYs the smallest y coordinate of each region.
+     * @param maxXs the largest x coordinate of each region.
+     * @param maxYs the largest y coordinate of each region.
+     */
+    public SpatialGrid(double[] minXs, double[] minYs, double[] maxXs, double[] maxYs) {
+        int regions = minXs.length;
+        double left = Double.POSITIVE_INFINITY;
+        double top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        double bottom = Double.NEGATIVE_INFINITY;
+        for (int region = 0; region < regions; region++) {
+            left = Math.min(left, minXs[region]);
+            top = Math.min(top, minYs[region]);
+            right = Math.max(right, maxXs[region]);
+            bottom = Math.max(bottom, maxYs[region]);
+        }
+        if (regions == 0) {
+            left = top = right = bottom = 0;
+        }
+
+        int side = Math.max(1, (int) Math.ceil(Math.sqrt(regions)));
+        this.minX = left;
+        this.minY = top;
+        this.columns = side;
+        this.rows = side;
+        this.cellWidth = Math.max((right - left) / side, Double.MIN_NORMAL);
+        this.cellHeight = Math.max((bottom - top) / side, Double.MIN_NORMAL);
+
+        // Count the regions of each cell first, so every cell can be given an array of exactly the right size.
+        int[] counts = new int[columns * rows];
+        for (int region = 0; region < regions; region++) {
+            for (int row = row(minYs[region]); row <= row(maxYs[region]); row++) {
+                for (int column = column(minXs[region]); column <= column(maxXs[region]); column++) {
+                    counts[row * columns + column]++;
+                }
+            }
+        }
+        cells = new int[columns * rows][];
+        for (int cell = 0; cell < cells.length; cell++) {
+            cells[cell] = counts[cell] == 0 ? NO_REGIONS : new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int region = 0; region < regions; region++) {
+            for (int row = row(minYs[region]); row <= row(maxYs[region]); row++) {
+                for (int column = column(minXs[region]); column <= column(maxXs[region]); column++) {
+                    int cell = row * columns + column;
+                    cells[cell][counts[cell]++] = region;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the regions whose bounding boxes may contain a point.
+     *
+     * @param x the x coordinate of the point.
+     * @param y the y coordinate of the point.
+     * @return the indexes of the regions listed in the cell holding the point, in increasing order. The array is
+     * shared, so it must not be changed.
+     */
+    public int[] candidatesAt(double x, double y) {
+        int column = (int) Math.floor((x - minX) / cellWidth);
+        int row = (int) Math.floor((y - minY) / cellHeight);
+        if (column < 0 || row < 0 || column > columns || row > rows) {
+            return NO_REGIONS;
+        }
+        return cells[Math.min(row, rows - 1) * columns + Math.min(column, columns - 1)];
+    }
+
+    /**
+     * Find the regions whose bounding boxes may overlap an area.
+     *
+     * @param left   the smallest x coordinate of the area.
+     * @param top    the smallest y coordinate of the area.
+     * @param right  the largest x coordinate of the area.
+     * @param bottom the largest y coordinate of the area.
+     * @return the indexes of the regions listed in the cells overlapping the area.
+     */
+    public BitSet candidatesIn(double left, double top, double right, double bottom) {
+        BitSet candidates = new BitSet();
+        for (int row = row(top); row <= row(bottom); row++) {
+            for (int column = column(left); column <= column(right); column++) {
+                for (int region : cells[row * columns + column]) {
+                    candidates.set(region);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Find the column of the grid holding an x coordinate, clamped to the grid.
+     */
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellWidth)));
+    }
+
+    /**
+     * Find the row of the grid holding a y coordinate, clamped to the grid.
+     */
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellHeight)));
+    }
+}
@@ -0,0 +1,118 @@
+package gui.components;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class to load the FXML files of the application, along with their stylesheets.
+ * <p>
+ * A node tree that is not yet part of a scene can be built on any thread, so the FXML files of the scenes can be loaded
+ * in the background, while their controllers fetch their data, instead of on the JavaFX Application Thread. FXML files
+ * loaded in the background run on a small pool of threads of their own, so that loading them never waits behind, or
+ * holds up, the queries on the QueryExecutor.
+ * <p>
+ * The URL of each stylesheet is resolved once and kept for the lifetime of the application. JavaFX keeps every
+ * stylesheet it has parsed by its URL, so giving every scene the same URL means each stylesheet is only parsed once.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.24
+ */
+public class ViewLoader {
+
+    private static final int POOL_SIZE = 2;
+    private static final ExecutorService LOADERS = Executors.newFixedThreadPool(POOL_SIZE, new LoaderThreadFactory());
+    private static final Map<String, String> STYLESHEETS = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for the ViewLoader class. It only has static methods, so it is never created.
+     */
+    private ViewLoader() {
+    }
+
+    /**
+     * Load an FXML file on the calling thread, and add its stylesheets to the root of the node tree it describes.
+     *
+     * @param controller  the controller of the FXML file.
+     * @param fxml        the file name of the FXML file, in the fxml resources folder.
+     * @param stylesheets the file names of the stylesheets, in the styles resources folder.
+     * @param <T>         the type of the root of the node tree.
+     * @return the root of the node tree, or null if the FXML file could not be loaded.
+     */
+    public static <T extends Parent> T load(Object controller, String fxml, String... stylesheets) {
+        FXMLLoader loader = new FXMLLoader(ViewLoader.class.getResource("../../resources/fxml/" + fxml));
+        loader.setController(controller);
+
+        T parent;
+        try {
+            parent = loader.load();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error loading " + fxml + "! " + e.getMessage() + " " + e.getCause());
+            return null;
+        }
+        for (String stylesheet : stylesheets) {
+            String url = STYLESHEETS.computeIfAbsent(stylesheet, ViewLoader::resolveStylesheet);
+            if (url != null) {
+                parent.getStylesheets().add(url);
+            }
+        }
+        return parent;
+    }
+
+    /**
+     * Load an FXML file in the background, and add its stylesheets to the root of the node tree it describes.
+     * The node tree must not be added to a scene until the loading is complete.
+     *
+     * @param controller  the controller of the FXML file.
+     * @param fxml        the file name of the FXML file, in the fxml resources folder.
+     * @param stylesheets the file names of the stylesheets, in the styles resources folder.
+     * @param <T>         the type of the root of the node tree.
+     * @return the root of the node tree, once loaded, or null if the FXML file could not be loaded.
+     */
+    public static <T extends Parent> CompletableFuture<T> loadInBackground(Object controller, String fxml,
+                                                                          String... stylesheets) {
+        try {
+            return CompletableFuture.supplyAsync(() -> load(controller, fxml, stylesheets), LOADERS);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Error scheduling the loading of " + fxml + ": " + e.getMessage());
+            return CompletableFuture.completedFuture(load(controller, fxml, stylesheets));
+        }
+    }
+
+    /**
+     * Find the URL of a stylesheet on the classpath.
+     */
+    private static String resolveStylesheet(String stylesheet) {
+        URL url = ViewLoader.class.getResource("../../resources/styles/" + stylesheet);
+        if (url == null) {
+            System.out.println("Error loading " + stylesheet + "! It could not be found on the classpath.");
+            return null;
+        }
+        return url.toExternalForm();
+    }
+
+    /**
+     * Creates named daemon loader threads, so that they never keep the application alive on their own.
+     */
+    private static class LoaderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "view-loader-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
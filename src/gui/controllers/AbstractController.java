@@ -3,6 +3,7 @@ package gui.controllers;
 import gui.SceneInitialiser;
 import javafx.animation.Animation;
 import javafx.animation.FadeTransition;
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.scene.Cursor;
 import javafx.scene.Node;
@@ -10,10 +11,17 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import utils.sql.queries.Query;
+import utils.sql.queries.QueryBatch;
+import utils.sql.queries.QueryCache;
+import utils.sql.queries.QueryResult;
 import utils.sql.queries.concurrent.QueryExecutor;
 
-import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 /**
  * Abstract class to be extended by all Controllers in the application.
@@ -25,11 +33,11 @@ import java.util.concurrent.ExecutionException;
  * This class is abstract and should not be instantiated directly. It is designed to be extended by other classes.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.28
+ * @version 2024.04.25
  */
 public abstract class AbstractController implements Controller {
 
-    protected ResultSet data;
+    protected QueryResult data;
     protected Scene scene;
     private Query query;
 
@@ -42,13 +50,23 @@ public abstract class AbstractController implements Controller {
     /**
      * Constructor for the AbstractController class.
      *
-     * @param queryString the query string to be executed.
+     * @param queryString the query string to be executed, with a '?' in place of each parameter.
+     * @param parameters  the values of the parameters of the query.
      */
-    protected AbstractController(String queryString) {
+    protected AbstractController(String queryString, Object... parameters) {
         if (queryString == null) {
             return;
         }
-        query = new Query(queryString);
+        query = new Query(queryString, parameters);
+    }
+
+    /**
+     * Constructor for the AbstractController class.
+     *
+     * @param query the query to be executed.
+     */
+    protected AbstractController(Query query) {
+        this.query = query;
     }
 
     /**
@@ -141,13 +159,35 @@ public abstract class AbstractController implements Controller {
     /**
      * Method to run a background task.
      * <p>
-     * This method runs a background task using the provided task object. It then sets the data from the task to the
-     * data field of the controller. Finally, it runs the onSucceeded runnable.
+     * This method runs a background task using the provided task object on the application-wide query executor. It
+     * then sets the data from the task to the data field of the controller. Finally, it runs the onSucceeded runnable.
+     * <p>
+     * If the task could not be run, or its query failed, the data field is set to an empty result and the onSucceeded
+     * runnable is run all the same, so the scene shows that there is no data rather than being left empty.
      *
      * @param task        the task to run
      * @param onSucceeded the runnable to run when the task is succeeded
      */
-    protected void runBackgroundTask(Task<ResultSet> task, Runnable onSucceeded) {
+    protected void runBackgroundTask(Task<QueryResult> task, Runnable onSucceeded) {
+        this.runBackgroundTask(task, onSucceeded, () -> {
+            data = QueryResult.empty();
+            onSucceeded.run();
+        });
+    }
+
+    /**
+     * Method to run a background task, with a runnable to run if it fails.
+     * <p>
+     * This method runs a background task using the provided task object on the application-wide query executor. It
+     * then sets the data from the task to the data field of the controller. Finally, it runs the onSucceeded runnable.
+     * If the query executor rejects the task, such as when its queue is full, or the task fails, such as when its query
+     * fails on the database, the onFailed runnable is run instead. Both are run on the JavaFX Application Thread.
+     *
+     * @param task        the task to run
+     * @param onSucceeded the runnable to run when the task is succeeded
+     * @param onFailed    the runnable to run when the task could not be run, or failed
+     */
+    protected void runBackgroundTask(Task<QueryResult> task, Runnable onSucceeded, Runnable onFailed) {
         task.setOnSucceeded(event -> {
             try {
                 data = task.get();
@@ -156,41 +196,190 @@ public abstract class AbstractController implements Controller {
             }
             onSucceeded.run();
         });
+        this.execute(task, onFailed);
+    }
+
+    /**
+     * Method to run a background task that returns a batch of results.
+     * <p>
+     * This method runs the given task on the application-wide query executor. When the task succeeds, its results are
+     * passed to the onSucceeded consumer on the JavaFX Application Thread. If the query executor rejects the task,
+     * such as when its queue is full, or the task fails, such as when its queries fail on the database, the onFailed
+     * runnable is run instead, on the JavaFX Application Thread too. The data field of the controller is left
+     * untouched.
+     *
+     * @param task        the task to run
+     * @param onSucceeded the consumer to pass the results of the task to when the task is succeeded
+     * @param onFailed    the runnable to run when the task could not be run, or failed
+     */
+    protected void runBackgroundTask(Task<List<QueryResult>> task, Consumer<List<QueryResult>> onSucceeded,
+                                     Runnable onFailed) {
+        task.setOnSucceeded(event -> {
+            try {
+                onSucceeded.accept(task.get());
+            } catch (ExecutionException | InterruptedException e) {
+                System.out.println("Error processing background thread" + e.getMessage() + e.getCause());
+            }
+        });
+        this.execute(task, onFailed);
+    }
+
+    /**
+     * Submit a task to the application-wide query executor, running onFailed if the task fails or is rejected.
+     * A rejected task is reported on a later pulse, so onFailed never runs before the caller has returned.
+     */
+    private void execute(Task<?> task, Runnable onFailed) {
+        task.setOnFailed(event -> {
+            System.out.println("Error processing background thread" + task.getException());
+            onFailed.run();
+        });
 
-        Thread thread = new Thread(task);
-        thread.setDaemon(true);
-        thread.start();
+        try {
+            QueryExecutor.getInstance().execute(task);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Error scheduling background task: " + e.getMessage());
+            Platform.runLater(onFailed);
+        }
     }
 
     /**
      * Method to create a task.
      * <p>
-     * This method creates a task using the provided query object. The task runs the query in the background and returns
-     * the result set from the query.
+     * This method creates a task using the provided query object. The task runs the query on the worker thread it is
+     * executed on and returns the result of the query, read fully into memory. The connection used by the query has
+     * already been returned to the connection pool by the time the task completes.
+     * <p>
+     * Results are looked up in, and stored in, the application's QueryCache, so running the same query with the same
+     * parameters again does not go back to the database. If the query fails, the task fails with its error, so the
+     * onFailed runnable given to runBackgroundTask is run, and nothing is cached.
      */
-    private Task<ResultSet> createTask(Query query) {
+    private Task<QueryResult> createTask(Query query) {
         return new Task<>() {
             @Override
-            protected ResultSet call() {
-                try {
-                    ResultSet ret = new QueryExecutor(query).runQuery().get();
-                    return ret;
-                } catch (InterruptedException | ExecutionException e) {
-                    System.out.println("Error processing background thread" + e.getMessage() + e.getCause());
-                }
-                return null;
+            protected QueryResult call() throws SQLException {
+                return fetch(query);
             }
         };
     }
 
+    /**
+     * Run a query on the calling thread, going through the application's QueryCache.
+     */
+    private QueryResult fetch(Query query) throws SQLException {
+        return QueryCache.getInstance().getOrExecute(query);
+    }
+
+    /**
+     * Method to create a task for a batch of queries.
+     * <p>
+     * This method creates a task that returns the result of each query in the batch, in order. Results found in the
+     * application's QueryCache are reused; every other query is sent to the database together in a single round trip,
+     * and their results are cached.
+     * <p>
+     * If the batch fails, the task fails with its error, so the onFailed runnable given to runBackgroundTask is run,
+     * and none of the results fetched is cached.
+     */
+    private Task<List<QueryResult>> createBatchTask(QueryBatch batch) {
+        return new Task<>() {
+            @Override
+            protected List<QueryResult> call() throws SQLException {
+                return fetch(batch);
+            }
+        };
+    }
+
+    /**
+     * Run a batch of queries on the calling thread, going through the application's QueryCache.
+     */
+    private List<QueryResult> fetch(QueryBatch batch) throws SQLException {
+        QueryCache cache = QueryCache.getInstance();
+        List<Query> queries = batch.getQueries();
+        List<QueryResult> results = new ArrayList<>();
+        QueryBatch uncached = new QueryBatch();
+
+        for (Query query : queries) {
+            QueryResult cached = cache.get(query);
+            results.add(cached);
+            if (cached == null) {
+                uncached.add(query);
+            }
+        }
+        if (uncached.size() == 0) {
+            return results;
+        }
+
+        List<QueryResult> fetched = uncached.execute();
+        int next = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                QueryResult result = fetched.get(next++);
+                cache.put(queries.get(i), result);
+                results.set(i, result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Method to prepare the controller off the JavaFX Application Thread.
+     * <p>
+     * By default, this method runs the query passed at construction on the calling thread, so that its result is
+     * already cached when beginLoading asks for it. Controllers that also load their FXML file here, or run other
+     * queries, override this method.
+     */
+    @Override
+    public void prepare() {
+        if (query != null) {
+            prefetch(query);
+        }
+    }
+
+    /**
+     * Method to run a query on the calling thread, so that its result is cached for a later call to queryDatabase.
+     * The query is not submitted to the query executor, so this method can safely be called from one of its workers.
+     * If the query fails, the error is reported, and queryDatabase runs it again later.
+     *
+     * @param query the query to run.
+     */
+    protected void prefetch(Query query) {
+        try {
+            fetch(query);
+        } catch (SQLException e) {
+            System.out.println("Error processing background thread" + e.getMessage() + e.getCause());
+        }
+    }
+
+    /**
+     * Method to run a batch of queries on the calling thread, so that their results are cached for a later call to
+     * queryDatabase. If the batch fails, the error is reported, and queryDatabase runs it again later.
+     *
+     * @param batch the queries to run.
+     */
+    protected void prefetch(QueryBatch batch) {
+        try {
+            fetch(batch);
+        } catch (SQLException e) {
+            System.out.println("Error processing background thread" + e.getMessage() + e.getCause());
+        }
+    }
+
+    /**
+     * Method to change the query run by queryDatabase, such as when the controller is moved to another date range.
+     *
+     * @param query the query to be executed.
+     */
+    protected void setQuery(Query query) {
+        this.query = query;
+    }
+
     /**
      * Method to query the database.
      * <p>
-     * This method queries the database using the query object passed at construction.
+     * This method queries the database using the query object passed at construction, or the last one set since.
      *
-     * @return A task that will return the result set from the query.
+     * @return A task that will return the result of the query.
      */
-    protected Task<ResultSet> queryDatabase() {
+    protected Task<QueryResult> queryDatabase() {
         return createTask(query);
     }
 
@@ -199,12 +388,23 @@ public abstract class AbstractController implements Controller {
      * <p>
      * This method queries the database using the provide query object.
      *
-     * @return A task that will return the result set from the query.
+     * @return A task that will return the result of the query.
      */
-    protected Task<ResultSet> queryDatabase(Query query) {
+    protected Task<QueryResult> queryDatabase(Query query) {
         return createTask(query);
     }
 
+    /**
+     * Method to query the database with a batch of queries.
+     * <p>
+     * This method sends every query in the batch that is not already cached to the database in a single round trip.
+     *
+     * @return A task that will return the results of the queries, in order.
+     */
+    protected Task<List<QueryResult>> queryDatabase(QueryBatch batch) {
+        return createBatchTask(batch);
+    }
+
     /**
      * Method to get the scene controlled by the Controller.
      *
@@ -1,27 +1,36 @@
 package gui.controllers;
 
 import gui.components.AssetLoader;
+import gui.components.BoroughPager;
+import gui.components.ViewLoader;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.Background;
 import javafx.scene.paint.Paint;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import utils.CovidData;
+import utils.sql.queries.Query;
+import utils.sql.queries.QueryCache;
+import utils.sql.queries.QueryResult;
+import utils.sql.queries.concurrent.QueryExecutor;
 
-import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.Objects;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The BoroughController class is responsible for displaying all the data of a specific borough.
@@ -32,28 +41,52 @@ import java.util.Objects;
  * <p>
  * The user is able to order the data in the table by clicking on the column headers.
  * <p>
+ * The window opens straight away, and the rows are added to the table in batches as they are read from the database,
+ * with a progress bar showing how many have arrived. Batches arriving close together are added at once, so the table is
+ * updated at most a few times per second however fast the rows arrive. Closing the window cancels the query.
+ * <p>
+ * Ranges longer than the paging threshold, set with the epiquest.borough.pagingThreshold system property, are not read
+ * in full. The table is instead fed by a BoroughPager, which only holds a few pages of rows around the ones on screen
+ * and fetches more as the user scrolls. Ordering by column is disabled in that case, since only part of the range is
+ * held at once.
+ * <p>
  * CSS styles are applied to the table to make it more visually appealing and to make the Borough View screen consistent
  * with the design of the rest of the application.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.25
  */
 public class BoroughController extends AbstractController {
 
+    private static final int FETCH_SIZE = 100;
+    private static final long UPDATE_INTERVAL_MILLIS = 250;
+    private static final int MAX_PAGES = 5;
+    private static final int PAGING_THRESHOLD_DAYS = Integer.getInteger("epiquest.borough.pagingThreshold", 730);
+
     private final String boroughName;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
     private final Stage boroughView;
+    private final Query query;
+    private final int expectedRows;
+    private final List<CovidData> pendingRecords;
+    private long lastUpdate;
+    private int rowsRead;
     @FXML
     private ImageView background;
     @FXML
     private Text close_button;
     @FXML
-    private TableView table_view;
+    private TableView<CovidData> table_view;
     @FXML
     private Label title;
+    @FXML
+    private ProgressBar progress;
     private ObservableList<CovidData> records;
     private Parent parent;
-    private TableColumn date, retailAndRecreation, groceryAndPharmacy, parks, transitStations, workplaces, residential,
-            newCases, totalCases, newDeaths, totalDeaths;
+    private TableColumn<CovidData, LocalDate> date;
+    private TableColumn<CovidData, Number> retailAndRecreation, groceryAndPharmacy, parks, transitStations, workplaces,
+            residential, newCases, totalCases, newDeaths, totalDeaths;
 
     /**
      * Constructor for the BoroughController class.
@@ -63,48 +96,128 @@ public class BoroughController extends AbstractController {
      * @param endDate     The end date of the date range to display data for.
      */
     public BoroughController(String boroughName, LocalDate startDate, LocalDate endDate) {
-        super("SELECT * FROM covid_london WHERE " +
-                "`date` BETWEEN '" + startDate + "' AND '" + endDate + "' AND " +
-                "borough=\"" + boroughName + "\" " +
-                "ORDER BY `date` ASC;");
+        this.query = new Query("SELECT * FROM covid_london WHERE " +
+                "`date` BETWEEN ? AND ? AND borough = ? " +
+                "ORDER BY `date` ASC;", startDate, endDate, boroughName)
+                .withLocalPlan(table -> table.boroughRows(boroughName, startDate, endDate));
 
         this.boroughName = boroughName;
+        this.startDate = startDate;
+        this.endDate = endDate;
         this.boroughView = new Stage();
+        // There is at most one row per day, so the number of days is used to show progress.
+        this.expectedRows = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        this.pendingRecords = new ArrayList<>();
     }
 
     /**
      * Method to begin loading the BoroughController.
      * <p>
      * This method is called when the user clicks "View Borough" on the Map screen.
-     * It loads the FXML file for the Borough View screen and sets up the scene and stage.
+     * It loads the FXML file for the Borough View screen, sets up the scene and stage, and shows the window before
+     * starting to read the rows into the table. Long ranges are paged rather than read in full.
      */
     @Override
     public void beginLoading() {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("../../resources/fxml/borough-view.fxml"));
-        loader.setController(this);
+        parent = ViewLoader.load(this, "borough-view.fxml", "table-view.css", "default.css");
 
-        try {
-            parent = loader.load();
-        } catch (IOException e) {
-            System.out.println("Error loading borough view fxml file" + e.getMessage() + e.getCause());
+        records = FXCollections.observableArrayList();
+        scene = new Scene(parent, 1450, 600, Paint.valueOf("white"));
+        this.prepareScene();
+        this.prepareStage();
+        boroughView.setOnHidden(event -> this.cancelQuery());
+        boroughView.show();
+
+        if (expectedRows > PAGING_THRESHOLD_DAYS) {
+            progress.setVisible(false);
+            new BoroughPager(table_view, boroughName, startDate, endDate, FETCH_SIZE, MAX_PAGES).start();
+        } else {
+            this.streamRecords();
         }
+    }
 
-        parent.getStylesheets().add(Objects.requireNonNull(getClass()
-                .getResource("../../resources/styles/table-view.css")).toExternalForm());
-        parent.getStylesheets().add(Objects.requireNonNull(getClass()
-                .getResource("../../resources/styles/default.css")).toExternalForm());
+    /**
+     * Method to read the rows of the borough into the table in the background.
+     * <p>
+     * A cached result is added to the table at once. Otherwise, the rows are fetched in batches, and each batch is
+     * turned into CovidData objects on the worker thread before being passed to the table. The full result is cached
+     * once every row has been read.
+     */
+    private void streamRecords() {
+        try {
+            QueryExecutor.getInstance().execute(() -> {
+                QueryCache cache = QueryCache.getInstance();
+                QueryResult cached = cache.get(query);
+                if (cached != null) {
+                    this.bufferRecords(cached);
+                    this.flushRecords(true);
+                    return;
+                }
+
+                List<QueryResult> batches = new ArrayList<>();
+                try {
+                    query.executeInBatches(FETCH_SIZE, batch -> {
+                        batches.add(batch);
+                        this.bufferRecords(batch);
+                        this.flushRecords(false);
+                    });
+                    cache.put(query, QueryResult.concat(batches));
+                } catch (SQLException e) {
+                    if (!query.isCancelled()) {
+                        System.out.println("Error reading the borough's records: " + e.getMessage());
+                    }
+                }
+                this.flushRecords(true);
+            });
+        } catch (RejectedExecutionException e) {
+            System.out.println("Error scheduling background task: " + e.getMessage());
+            // Nothing will be read, so hide the progress bar rather than leave it showing.
+            this.flushRecords(true);
+        }
+    }
 
-        super.runBackgroundTask(super.queryDatabase(), () -> {
-            this.processQuery();
-            this.prepareScene();
+    /**
+     * Method to turn a batch of rows into CovidData objects, waiting to be added to the table.
+     * It is called on the worker thread reading the rows.
+     */
+    private void bufferRecords(QueryResult rows) {
+        pendingRecords.addAll(CovidData.listOf(rows));
+    }
 
-            this.prepareStage();
+    /**
+     * Method to add the waiting CovidData objects to the table on the JavaFX Application Thread.
+     * <p>
+     * It is called on the worker thread reading the rows. The first rows are added straight away; after that, rows are
+     * only added once the update interval has passed since the last update, unless this is the final update.
+     */
+    private void flushRecords(boolean finished) {
+        long now = System.currentTimeMillis();
+        boolean due = rowsRead == 0 || now - lastUpdate >= UPDATE_INTERVAL_MILLIS;
+        if (!finished && (!due || pendingRecords.isEmpty())) {
+            return;
+        }
+        List<CovidData> batch = new ArrayList<>(pendingRecords);
+        pendingRecords.clear();
+        lastUpdate = now;
+        rowsRead += batch.size();
+        double fractionRead = finished ? 1 : Math.min(1, (double) rowsRead / expectedRows);
+
+        Platform.runLater(() -> {
+            records.addAll(batch);
+            progress.setProgress(fractionRead);
+            progress.setVisible(!finished);
         });
+    }
 
-        scene = new Scene(parent, 1450, 600, Paint.valueOf("white"));
-        boroughView.show();
-
-
+    /**
+     * Method to cancel the query reading the rows, when the window is closed before they have all been read.
+     */
+    private void cancelQuery() {
+        try {
+            QueryExecutor.getInstance().cancel(query);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Error cancelling the borough's query: " + e.getMessage());
+        }
     }
 
     /**
@@ -148,45 +261,48 @@ public class BoroughController extends AbstractController {
 
         table_view.setBackground(Background.EMPTY);
 
-        date = new TableColumn("Date");
+        date = new TableColumn<>("Date");
         date.setMinWidth(50);
 
-        retailAndRecreation = new TableColumn("Retail and Recreation");
+        retailAndRecreation = new TableColumn<>("Retail and Recreation");
         retailAndRecreation.setMinWidth(190);
 
-        groceryAndPharmacy = new TableColumn("Grocery and Pharmacy");
+        groceryAndPharmacy = new TableColumn<>("Grocery and Pharmacy");
         groceryAndPharmacy.setMinWidth(200);
 
-        parks = new TableColumn("Parks");
+        parks = new TableColumn<>("Parks");
         parks.setMinWidth(60);
 
-        transitStations = new TableColumn("Transit Stations");
+        transitStations = new TableColumn<>("Transit Stations");
         transitStations.setMinWidth(160);
 
-        workplaces = new TableColumn("Workplaces");
+        workplaces = new TableColumn<>("Workplaces");
         workplaces.setMinWidth(100);
 
-        residential = new TableColumn("Residential");
+        residential = new TableColumn<>("Residential");
         residential.setMinWidth(100);
 
-        newCases = new TableColumn("New Cases");
+        newCases = new TableColumn<>("New Cases");
         newCases.setMinWidth(100);
 
-        totalCases = new TableColumn("Total Cases");
+        totalCases = new TableColumn<>("Total Cases");
         totalCases.setMinWidth(120);
 
-        newDeaths = new TableColumn("New Deaths");
+        newDeaths = new TableColumn<>("New Deaths");
         newDeaths.setMinWidth(100);
 
-        totalDeaths = new TableColumn("Total Deaths");
+        totalDeaths = new TableColumn<>("Total Deaths");
         totalDeaths.setMinWidth(120);
 
         this.populateTableView();
 
-        table_view.setItems(records);
+        // Sorting a SortedList view instead of the records themselves keeps rows added later in the chosen order.
+        SortedList<CovidData> sortedRecords = new SortedList<>(records);
+        sortedRecords.comparatorProperty().bind(table_view.comparatorProperty());
+        table_view.setItems(sortedRecords);
 
-        table_view.getColumns().addAll(date, retailAndRecreation, groceryAndPharmacy, parks, transitStations, workplaces,
-                residential, newCases, totalCases, newDeaths, totalDeaths);
+        table_view.getColumns().addAll(List.of(date, retailAndRecreation, groceryAndPharmacy, parks, transitStations,
+                workplaces, residential, newCases, totalCases, newDeaths, totalDeaths));
     }
 
     /**
@@ -194,24 +310,23 @@ public class BoroughController extends AbstractController {
      * <p>
      * This method is called when the BoroughController is created.
      * It populates the TableView with the CovidData objects generated from the database query.
-     * The PropertyValueFactory is used to bind the data fields of the CovidData objects to the columns in the TableView.
-     * This allows the TableView to display the data in the CovidData objects in the correct columns.
-     * The PropertyValueFactory also allows the TableView to be editable, so that the user can order the data by clicking
-     * on the column headers. The TableView is styled using CSS to make it visually appealing and consistent with the
-     * design of the rest of the application.
+     * Each column is bound to the matching property of the CovidData objects, which is only created when a cell
+     * displaying it is first shown. The properties keep their values' types, so that the user can order the data by
+     * clicking on the column headers. The TableView is styled using CSS to make it visually appealing and consistent
+     * with the design of the rest of the application.
      */
     private void populateTableView() {
-        date.setCellValueFactory(new PropertyValueFactory<CovidData, String>("dateProperty"));
-        retailAndRecreation.setCellValueFactory(new PropertyValueFactory<CovidData, String>("retailAndRecreationProperty"));
-        groceryAndPharmacy.setCellValueFactory(new PropertyValueFactory<CovidData, String>("groceryAndPharmacyProperty"));
-        parks.setCellValueFactory(new PropertyValueFactory<CovidData, String>("parksProperty"));
-        transitStations.setCellValueFactory(new PropertyValueFactory<CovidData, String>("transitStationProperty"));
-        workplaces.setCellValueFactory(new PropertyValueFactory<CovidData, String>("workplacesProperty"));
-        residential.setCellValueFactory(new PropertyValueFactory<CovidData, String>("residentialProperty"));
-        newCases.setCellValueFactory(new PropertyValueFactory<CovidData, String>("newCasesProperty"));
-        totalCases.setCellValueFactory(new PropertyValueFactory<CovidData, String>("totalCasesProperty"));
-        newDeaths.setCellValueFactory(new PropertyValueFactory<CovidData, String>("newDeathsProperty"));
-        totalDeaths.setCellValueFactory(new PropertyValueFactory<CovidData, String>("totalDeathsProperty"));
+        date.setCellValueFactory(cell -> cell.getValue().dateProperty());
+        retailAndRecreation.setCellValueFactory(cell -> cell.getValue().retailAndRecreationProperty());
+        groceryAndPharmacy.setCellValueFactory(cell -> cell.getValue().groceryAndPharmacyProperty());
+        parks.setCellValueFactory(cell -> cell.getValue().parksProperty());
+        transitStations.setCellValueFactory(cell -> cell.getValue().transitStationsProperty());
+        workplaces.setCellValueFactory(cell -> cell.getValue().workplacesProperty());
+        residential.setCellValueFactory(cell -> cell.getValue().residentialProperty());
+        newCases.setCellValueFactory(cell -> cell.getValue().newCasesProperty());
+        totalCases.setCellValueFactory(cell -> cell.getValue().totalCasesProperty());
+        newDeaths.setCellValueFactory(cell -> cell.getValue().newDeathsProperty());
+        totalDeaths.setCellValueFactory(cell -> cell.getValue().totalDeathsProperty());
     }
 
     /**
@@ -221,7 +336,7 @@ public class BoroughController extends AbstractController {
      * It sets the background image for the scene to the image specified in the AssetLoader class.
      */
     private void setBackground() {
-        background.setImage(AssetLoader.WELCOME_BACKGROUND);
+        background.setImage(AssetLoader.getImage(AssetLoader.WELCOME_BACKGROUND, 1450, 560, false));
         background.setFitWidth(1450);
         background.setFitHeight(560);
         background.setPreserveRatio(false);
@@ -238,27 +353,4 @@ public class BoroughController extends AbstractController {
         close_button.getStyleClass().add("clickable");
         close_button.setOnMouseClicked(event -> boroughView.close());
     }
-
-    /**
-     * Method to process the database query and generate CovidData objects.
-     * <p>
-     * This method is called when the BoroughController is created.
-     * It processes the database query and generates CovidData objects for each row in the ResultSet.
-     * The CovidData objects are stored in an ObservableList, which is used to populate the TableView.
-     */
-    private void processQuery() {
-        records = FXCollections.observableArrayList();
-        try {
-            while (data.next()) {
-                records.add(new CovidData(data.getString("date"), data.getString("borough"),
-                        data.getInt("retail_and_recreation"), data.getInt("grocery_and_pharmacy"),
-                        data.getInt("parks"), data.getInt("transit_stations"),
-                        data.getInt("workplaces"), data.getInt("residential"),
-                        data.getInt("new_cases"), data.getInt("total_cases"),
-                        data.getInt("new_deaths"), data.getInt("total_deaths")));
-            }
-        } catch (SQLException e) {
-            System.out.println("Error generating covid records");
-        }
-    }
 }
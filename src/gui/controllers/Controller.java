@@ -2,12 +2,22 @@ package gui.controllers;
 
 /**
  * Interface for all controllers.
+ * <p>
+ * A controller is built in two steps. The prepare method does the work that does not need the JavaFX Application
+ * Thread, such as loading the FXML file and fetching data, and may be called on any thread. The beginLoading method
+ * then finishes building the scene, and must be called on the JavaFX Application Thread.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.08
  */
 public interface Controller {
 
+    /**
+     * Preparation method for the controller, which may be called off the JavaFX Application Thread.
+     * Calling it is optional: beginLoading does whatever has not been prepared.
+     */
+    void prepare();
+
     /**
      * Initialisation method for the controller.
      */
@@ -0,0 +1,26 @@
+package gui.controllers;
+
+import java.time.LocalDate;
+
+/**
+ * Interface for the controllers of the scenes that show the date range selected on the welcome screen.
+ * <p>
+ * Once its scene has been built, such a controller can be moved to another date range in place. Only its data is
+ * fetched again, and the nodes already on its scene are updated with it, so changing the range never builds the scene
+ * again.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.25
+ */
+public interface DateRangeController extends Controller {
+
+    /**
+     * Show another date range on the scene of the controller, fetching its data in the background. It must be called
+     * on the JavaFX Application Thread, after beginLoading. If it is called again before the data of the last range
+     * has arrived, only the latest range is shown.
+     *
+     * @param startDate the start date of the date range.
+     * @param endDate   the end date of the date range.
+     */
+    void updateDateRange(LocalDate startDate, LocalDate endDate);
+}
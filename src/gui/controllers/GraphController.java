@@ -3,9 +3,10 @@ package gui.controllers;
 import gui.components.AssetLoader;
 import gui.components.BarChartPlotter;
 import gui.components.LinePlotter;
-import gui.components.Plotter;
+import gui.components.ViewLoader;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.chart.CategoryAxis;
 import javafx.scene.chart.Chart;
@@ -16,28 +17,58 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.text.Text;
 import utils.sql.queries.Query;
+import utils.sql.queries.QueryBatch;
+import utils.sql.queries.QueryResult;
+import utils.sql.queries.concurrent.QuerySequencer;
+import utils.store.CovidTable;
+import utils.store.TimeSeriesPyramid;
+import utils.store.TimeSeriesPyramid.Aggregate;
+import utils.store.TimeSeriesPyramid.Granularity;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class is a controller for the graph scene. It is used to display the plot of the data that is passed to it.
  * <p>
  * The class extends the AbstractController class and uses the data that is passed to it to display the plot.
+ * <p>
+ * The queries for the charts are run through a QuerySequencer, so scrolling quickly through the combo box only runs
+ * the query for the selection the user settles on, and a chart is never replaced by one for an older selection.
+ * <p>
+ * One line chart and one bar chart are created with the scene and kept for as long as it is. Choosing another borough
+ * or statistic only updates the points of the chart shown, and the charts are only swapped in the container when the
+ * user switches between them.
+ * <p>
+ * The daily total deaths of each borough shown on the line chart are kept in a TimeSeriesPyramid, built on the worker
+ * thread that ran the query. The user can choose whether to see the deaths by day, week, month or quarter, and can
+ * zoom and pan along the range, all of which is read from the pyramid. Coming back to a borough shown before also uses
+ * its pyramid, so none of these go to the database.
+ * <p>
+ * When the user selects another date range, the pyramids of the old range are dropped and the chart shown is fetched
+ * again for the new range, on the same scene.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.28
+ * @version 2024.04.25
  */
-public class GraphController extends AbstractController {
+public class GraphController extends AbstractController implements DateRangeController {
 
-    private final LocalDate startDate;
-    private final LocalDate endDate;
+    private static final String DEFAULT_BOROUGH = "Barking And Dagenham";
+    private static final long CHART_DEBOUNCE_MILLIS = 150;
+    private static final int CHART_QUERY_TIMEOUT_SECONDS = 15;
+    private LocalDate startDate;
+    private LocalDate endDate;
     private final ArrayList<String> boroughNames;
     private final ArrayList<String> statistics;
+    private final QuerySequencer chartSequencer;
+    private final LinePlotter linePlotter;
+    private final BarChartPlotter barPlotter;
+    private final ComboBox<Granularity> granularityChooser;
+    private final Map<String, TimeSeriesPyramid> pyramids;
     private int numberGraphsDrawn;
     @FXML
     private Text title;
@@ -65,6 +96,19 @@ public class GraphController extends AbstractController {
         this.endDate = endDate;
         this.boroughNames = new ArrayList<>();
         this.statistics = new ArrayList<>();
+        this.chartSequencer = new QuerySequencer(CHART_DEBOUNCE_MILLIS, CHART_QUERY_TIMEOUT_SECONDS, Platform::runLater);
+        this.linePlotter = new LinePlotter(new NumberAxis(), "Date", new NumberAxis(), "Total Deaths");
+        this.barPlotter = new BarChartPlotter(new CategoryAxis(), "Boroughs", new NumberAxis(), "");
+        this.granularityChooser = new ComboBox<>();
+        this.pyramids = new HashMap<>();
+
+        granularityChooser.getItems().addAll(Granularity.values());
+        granularityChooser.setValue(Granularity.DAY);
+        granularityChooser.valueProperty().addListener((observable, oldGranularity, newGranularity) -> {
+            if (newGranularity != null) {
+                linePlotter.setGranularity(newGranularity);
+            }
+        });
 
         indexCurrentlyShowing = 0;
         numberGraphsDrawn = 0;
@@ -72,39 +116,59 @@ public class GraphController extends AbstractController {
 
     /**
      * This method is used to run the initial query to populate the combo box with the borough names and the statistics
-     * that can be displayed.
+     * that can be displayed. Both queries are sent to the database together, in a single round trip.
+     * <p>
+     * If they could not be fetched, the combo box is left empty, and the line graph of the default borough is drawn
+     * on its own.
      */
     private void initialQuery() {
-        Query boroughQuery = new Query("SELECT DISTINCT borough FROM covid_london ORDER BY borough;");
-        Query statisticsQuery = new Query("SELECT DISTINCT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = 'covid_london';");
-
-        super.runBackgroundTask(super.queryDatabase(boroughQuery), () -> {
-            ResultSet boroughResultSet = data;
-            try {
-                while (boroughResultSet.next()) {
-                    boroughNames.add(boroughResultSet.getString("borough"));
-                }
-            } catch (SQLException e) {
-                System.out.println("Error Retrieving metadata from database! \n" + e.getMessage() + "\n" + e.getCause() + "\n" + Arrays.toString(e.getStackTrace()));
-            }
-            this.addListener();
-            this.populateComboBoxBoroughs();
-            this.drawLineGraph();
-        });
+        super.runBackgroundTask(super.queryDatabase(this.initialBatch()), this::showInitialResults,
+                () -> this.showInitialResults(List.of(QueryResult.empty(), QueryResult.empty())));
+    }
 
-        super.runBackgroundTask(super.queryDatabase(statisticsQuery), () -> {
-            ResultSet statisticsResultSet = data;
-            try {
-                while (statisticsResultSet.next()) {
-                    statistics.add(statisticsResultSet.getString("COLUMN_NAME"));
-                }
-                statistics.remove("date");
-                statistics.remove("borough");
-            } catch (SQLException e) {
-                System.out.println("Error Retrieving metadata from database! \n" + e.getMessage() + "\n" + e.getCause() + "\n" + Arrays.toString(e.getStackTrace()));
-            }
+    /**
+     * This method populates the combo box with the borough names and statistics fetched by the initial query, and
+     * draws the line graph of the default borough.
+     */
+    private void showInitialResults(List<QueryResult> results) {
+        QueryResult statisticsResult = results.get(1);
+        for (int row = 0; row < statisticsResult.size(); row++) {
+            statistics.add(statisticsResult.getString(row, "COLUMN_NAME"));
+        }
+        statistics.remove("date");
+        statistics.remove("borough");
 
-        });
+        QueryResult boroughResult = results.get(0);
+        for (int row = 0; row < boroughResult.size(); row++) {
+            boroughNames.add(boroughResult.getString(row, "borough"));
+        }
+        this.addListener();
+        this.populateComboBoxBoroughs();
+        this.drawLineGraph();
+    }
+
+    /**
+     * This method creates the batch of queries for the borough names and the statistics that can be displayed.
+     */
+    private QueryBatch initialBatch() {
+        Query boroughQuery = new Query("SELECT DISTINCT borough FROM covid_london ORDER BY borough;")
+                .withLocalPlan(CovidTable::boroughs);
+        Query statisticsQuery = new Query("SELECT DISTINCT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = 'covid_london';")
+                .withLocalPlan(CovidTable::columnNames);
+        return new QueryBatch(boroughQuery, statisticsQuery);
+    }
+
+    /**
+     * This method prepares the graph scene off the JavaFX Application Thread.
+     * <p>
+     * It loads the FXML file and fetches the borough names, the statistics and the line graph shown first, so that
+     * beginLoading only has to set up the panel.
+     */
+    @Override
+    public void prepare() {
+        CompletableFuture<AnchorPane> frame = ViewLoader.loadInBackground(this, "graph-frame.fxml", "default.css");
+        super.prefetch(this.initialBatch().add(this.lineGraphQuery(DEFAULT_BOROUGH)));
+        parent = frame.join();
     }
 
     /**
@@ -112,14 +176,8 @@ public class GraphController extends AbstractController {
      */
     @Override
     public void beginLoading() {
-        FXMLLoader loader = new FXMLLoader();
-        loader.setLocation(getClass().getResource("../../resources/fxml/graph-frame.fxml"));
-        loader.setController(this);
-        try {
-            parent = loader.load();
-            parent.getStylesheets().add(Objects.requireNonNull(getClass().getResource("../../resources/styles/default.css")).toExternalForm());
-        } catch (Exception e) {
-            System.out.println("Error loading the FXML file for the graph-frame! \n" + e.getCause() + "\n" + e.getMessage() + "\n" + Arrays.toString(e.getStackTrace()));
+        if (parent == null) {
+            this.loadFrame();
         }
 
         this.initialQuery();
@@ -130,6 +188,40 @@ public class GraphController extends AbstractController {
 
     }
 
+    /**
+     * This method shows another date range on the graph scene.
+     * <p>
+     * The chart still being fetched for the old range is cancelled, and the pyramids of the old range are dropped. The
+     * chart the user chose is then fetched again for the new range, which resets the zoom of the line chart. If the
+     * first chart has not been chosen yet, it is fetched for the new range when it is.
+     *
+     * @param startDate the start date for the data to be displayed.
+     * @param endDate   the end date for the data to be displayed.
+     */
+    @Override
+    public void updateDateRange(LocalDate startDate, LocalDate endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        chartSequencer.cancel();
+        pyramids.clear();
+        if (boroughNames.isEmpty() || combo_box.getValue() == null) {
+            return;
+        }
+
+        if (boroughNames.contains(combo_box.getValue())) {
+            this.drawLineGraph();
+            return;
+        }
+        this.drawBarChart();
+    }
+
+    /**
+     * This method loads the FXML file for the graph scene, along with its stylesheet.
+     */
+    private void loadFrame() {
+        parent = ViewLoader.load(this, "graph-frame.fxml", "default.css");
+    }
+
     /**
      * This method is used to set the panel for the graph scene.
      * <p>
@@ -157,7 +249,6 @@ public class GraphController extends AbstractController {
                 return;
             }
 
-            graph_container.getChildren().clear();
             if (boroughNames.contains(t1)) {
                 drawLineGraph();
                 return;
@@ -172,7 +263,7 @@ public class GraphController extends AbstractController {
      * This method sets the background for the graph scene by setting the image and size of the background.
      */
     private void setBackground() {
-        background.setImage(AssetLoader.GRAPH_BACKGROUND);
+        background.setImage(AssetLoader.getImage(AssetLoader.GRAPH_BACKGROUND, 960, 600, true));
         background.setFitWidth(960);
         background.setFitHeight(600);
         background.setPreserveRatio(true);
@@ -207,14 +298,13 @@ public class GraphController extends AbstractController {
      * style class "clickable" to the next button to ensure correct styling.
      */
     private void setNextButton() {
-        next.setImage(AssetLoader.ARROW);
+        next.setImage(AssetLoader.getImage(AssetLoader.ARROW, 110, 40, true));
         next.setFitWidth(110);
         next.setFitHeight(40);
         next.setPreserveRatio(true);
         next.getStyleClass().add("clickable");
 
         next.setOnMouseClicked(event -> {
-            graph_container.getChildren().clear();
             if (indexCurrentlyShowing == 0) {
                 indexCurrentlyShowing = 1;
                 populateComboBoxStatistics();
@@ -223,7 +313,7 @@ public class GraphController extends AbstractController {
             }
             indexCurrentlyShowing = 0;
             populateComboBoxBoroughs();
-            combo_box.setValue("Barking And Dagenham");
+            combo_box.setValue(DEFAULT_BOROUGH);
         });
 
     }
@@ -235,7 +325,7 @@ public class GraphController extends AbstractController {
      * style class "clickable" to the previous button to ensure correct styling.
      */
     private void setPrevButton() {
-        prev.setImage(AssetLoader.ARROW);
+        prev.setImage(AssetLoader.getImage(AssetLoader.ARROW, 110, 40, true));
         prev.setScaleX(-1);
         prev.setFitWidth(110);
         prev.setFitHeight(40);
@@ -243,7 +333,6 @@ public class GraphController extends AbstractController {
         prev.getStyleClass().add("clickable");
 
         prev.setOnMouseClicked(event -> {
-            graph_container.getChildren().clear();
             if (indexCurrentlyShowing == 0) {
                 indexCurrentlyShowing = 1;
                 populateComboBoxStatistics();
@@ -252,60 +341,110 @@ public class GraphController extends AbstractController {
             }
             indexCurrentlyShowing = 0;
             populateComboBoxBoroughs();
-            combo_box.setValue("Barking And Dagenham");
+            combo_box.setValue(DEFAULT_BOROUGH);
         });
     }
 
     /**
      * Method to draw the line graph.
      * <p>
-     * This method is used to draw the line graph for the data that is passed to it.
+     * This method is used to draw the line graph for the data that is passed to it. The points of the graph are read
+     * from the result of the query into a TimeSeriesPyramid on the worker thread that ran it, and the pyramid is kept
+     * for when the borough is chosen again.
      */
     private void drawLineGraph() {
-        Plotter linePlotter = new LinePlotter(new CategoryAxis(), "Date", new NumberAxis(), "Total Deaths");
-        title.setText("Currently Showing: Total Deaths over Time for " + combo_box.getValue());
-
-        Query query = new Query("SELECT MONTH(`date`) AS `month`, YEAR(`date`) AS `year`, total_deaths " +
-                "FROM covid_london " +
-                "WHERE `date` BETWEEN '" + startDate + "' AND '" + endDate + "' AND borough = \"" + combo_box.getValue() + "\" GROUP BY MONTH(`date`), YEAR(`date`)" +
-                "ORDER BY `date`;");
-
-        super.runBackgroundTask(super.queryDatabase(query), () -> {
-            graph_container.getChildren().clear();
-            ResultSet resultSet = data;
-            linePlotter.setData(resultSet);
-            Chart lineChart = linePlotter.plot();
-            lineChart.setPrefWidth(800);
-            lineChart.setLegendVisible(false);
-
-            graph_container.getChildren().add(lineChart);
-            numberGraphsDrawn++;
-        });
+        String borough = combo_box.getValue();
+        title.setText("Currently Showing: Total Deaths over Time for " + borough);
+
+        TimeSeriesPyramid pyramid = pyramids.get(borough);
+        if (pyramid != null) {
+            // Stop a query still running for a borough chosen before, so it cannot replace this one.
+            chartSequencer.cancel();
+            this.plotLineGraph(pyramid);
+            return;
+        }
+        chartSequencer.submit(this.lineGraphQuery(borough),
+                result -> TimeSeriesPyramid.from(result, "date", "total_deaths"), built -> {
+                    pyramids.put(borough, built);
+                    this.plotLineGraph(built);
+                }, this::showNoData);
+    }
+
+    /**
+     * Method to plot the line graph from the pyramid of a borough. Total deaths are cumulative, so each bucket shows
+     * its last value.
+     */
+    private void plotLineGraph(TimeSeriesPyramid pyramid) {
+        linePlotter.setPyramid(pyramid, Aggregate.LAST);
+        this.showChart(linePlotter.plot(), granularityChooser);
+    }
+
+    /**
+     * Method to create the query for the total deaths in a borough on each day in the date range.
+     */
+    private Query lineGraphQuery(String borough) {
+        // The dates are copied, so the query keeps its range if the scene is moved to another one while it runs.
+        LocalDate start = startDate;
+        LocalDate end = endDate;
+        return new Query("SELECT `date`, total_deaths FROM covid_london " +
+                "WHERE `date` BETWEEN ? AND ? AND borough = ? " +
+                "ORDER BY `date`;", start, end, borough)
+                .withLocalPlan(table -> table.dailyTotalDeaths(borough, start, end));
     }
 
     /**
      * Method to draw the bar chart.
      * <p>
-     * This method is used to draw the bar chart for the data that is passed to it.
+     * This method is used to draw the bar chart for the data that is passed to it. Only statistics that are columns
+     * of the table can be drawn. The bars are read from the result of the query on the worker thread that ran it.
      */
     private void drawBarChart() {
-        Plotter barPlotter = new BarChartPlotter(new CategoryAxis(), "Boroughs", new NumberAxis(), combo_box.getValue());
-        title.setText(combo_box.getValue() + " across London");
-
-        Query barChartQuery = new Query("SELECT AVG(" + combo_box.getValue() + ") AS average_statistic, borough FROM covid_london " +
-                "WHERE `date` BETWEEN '" + startDate + "' AND '" + endDate + "' GROUP BY borough ORDER BY borough;");
-
-        super.runBackgroundTask(super.queryDatabase(barChartQuery), () -> {
-            graph_container.getChildren().clear();
-            ResultSet barChartData = data;
-            barPlotter.setData(barChartData);
-            Chart barChart = barPlotter.plot();
-            barChart.setPrefWidth(800);
-            barChart.setLegendVisible(false);
-
-            graph_container.getChildren().add(barChart);
-            numberGraphsDrawn++;
-        });
+        String statistic = combo_box.getValue();
+        if (!statistics.contains(statistic)) {
+            return;
+        }
+        title.setText(statistic + " across London");
+
+        // Column names cannot be passed as parameters, so the statistic is checked against the columns of the table
+        // before it is written into the query.
+        LocalDate start = startDate;
+        LocalDate end = endDate;
+        Query barChartQuery = new Query("SELECT AVG(`" + statistic + "`) AS average_statistic, borough FROM covid_london " +
+                "WHERE `date` BETWEEN ? AND ? GROUP BY borough ORDER BY borough;", start, end)
+                .withLocalPlan(table -> table.boroughAverages(statistic, start, end));
+
+        chartSequencer.submit(barChartQuery, BarChartPlotter::prepare, series -> {
+            barPlotter.setYLabel(statistic);
+            barPlotter.setData(series);
+            this.showChart(barPlotter.plot());
+        }, this::showNoData);
+    }
+
+    /**
+     * Method to show that the data for the chart chosen could not be loaded.
+     * <p>
+     * The chart shown before is taken out of the graph container, so it is never left under the title of another
+     * borough, statistic or date range.
+     */
+    private void showNoData() {
+        graph_container.getChildren().clear();
+        title.setText(title.getText() + " (no data could be loaded)");
+    }
+
+    /**
+     * Method to show a chart in the graph container, followed by the controls that go with it.
+     * <p>
+     * The chart is only added to the container if it is not already the one shown, so updating the points of the
+     * chart on screen does not rebuild any part of the scene.
+     */
+    private void showChart(Chart chart, Node... controls) {
+        if (!graph_container.getChildren().contains(chart)) {
+            chart.setPrefWidth(800);
+            chart.setLegendVisible(false);
+            graph_container.getChildren().setAll(chart);
+            graph_container.getChildren().addAll(controls);
+        }
+        numberGraphsDrawn++;
     }
 
     /**
@@ -316,7 +455,7 @@ public class GraphController extends AbstractController {
     private void populateComboBoxBoroughs() {
         combo_box.getItems().clear();
         combo_box.getItems().addAll(boroughNames);
-        combo_box.setValue("Barking And Dagenham");
+        combo_box.setValue(DEFAULT_BOROUGH);
     }
 
     /**
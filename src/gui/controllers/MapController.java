@@ -1,28 +1,31 @@
 package gui.controllers;
 
 import gui.components.AssetLoader;
-import javafx.concurrent.Task;
+import gui.components.BoroughGeometry;
+import gui.components.CanvasMap;
+import gui.components.ViewLoader;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
 import javafx.scene.Group;
-import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.ListView;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.SVGPath;
 import javafx.scene.text.Text;
 import utils.sql.queries.Query;
+import utils.sql.queries.QueryBatch;
+import utils.sql.queries.QueryResult;
 
-import java.io.File;
-import java.io.IOException;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Class to control the map panel.
@@ -40,6 +43,22 @@ import java.util.concurrent.ExecutionException;
  * and enlarged, and those effects will rather apply to the newly clicked borough. Hovering over the other boroughs will
  * cause the borders of that borough to be highlighted in black, but the borough will not be enlarged.
  * <p>
+ * Maps with more regions than the canvas threshold, set with the epiquest.map.canvasThreshold system property, are
+ * drawn onto a single canvas by a CanvasMap instead of with one node per region, as is any map when the
+ * epiquest.map.canvas system property is true. The canvas map outlines the hovered and clicked regions rather than
+ * enlarging them.
+ * <p>
+ * The node of each borough is indexed by its name when the map is drawn, and every node is created with the name and
+ * record of its borough, so hovering, clicking and colouring a borough never have to search the scene graph for it.
+ * <p>
+ * Scrolling over the map zooms it in and out around the cursor, and once zoomed in it can be dragged to pan it. The map
+ * stays clipped to the space it first took. The outlines are drawn at the coarsest level of detail kept by
+ * BoroughGeometry that looks the same as the full outlines at the current zoom, so the zoomed out map draws far fewer
+ * points, and the detail comes back as the map is zoomed in.
+ * <p>
+ * When the user selects another date range, the totals for it are fetched and the boroughs are coloured again and
+ * given their new totals, on the same map, without drawing it again.
+ * <p>
  * Clicking on the "View Borough" button displays all the data for the selected borough for the selected date range in a
  * new window, in a table format.
  * <p>
@@ -47,9 +66,17 @@ import java.util.concurrent.ExecutionException;
  * in the bottom left corner of the screen.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.25
  */
-public class MapController extends AbstractController {
+public class MapController extends AbstractController implements DateRangeController {
+
+    private static final int CANVAS_REGION_THRESHOLD = Integer.getInteger("epiquest.map.canvasThreshold", 200);
+    private static final boolean FORCE_CANVAS = Boolean.getBoolean("epiquest.map.canvas");
+    private static final double MIN_ZOOM = 1;
+    private static final double MAX_ZOOM = 8;
+    private static final double ZOOM_FACTOR = 1.25;
+    private static final String[] NO_RECORD_TEXTS = {"Total Cases: 0", "Deaths: 0"};
+    private static final String NO_DATA_COLOUR = "#808080";
 
     @FXML
     private ListView list;
@@ -64,6 +91,19 @@ public class MapController extends AbstractController {
     private AnchorPane parent;
     private LocalDate startDate, endDate;
     private HashMap<String, Integer[]> localBoroughRecords;
+    private Map<String, String[]> hoverTexts = new HashMap<>();
+    private final Map<String, SVGPath> boroughTiles = new LinkedHashMap<>();
+    private SVGPath selectedTile;
+    private CanvasMap canvasMap;
+    private boolean hoverDisabled;
+    private double baseScaleX, baseScaleY, zoom = MIN_ZOOM;
+    private double dragX, dragY;
+    private Bounds mapViewport;
+    private int detailLevel;
+    private int rangeGeneration;
+    private boolean mapDrawn;
+    private boolean noDataShown;
+    private String selectedBorough;
 
     /**
      * No-argument constructor for the MapController class
@@ -78,14 +118,26 @@ public class MapController extends AbstractController {
      * @param endDate   The end date of the date range
      */
     public MapController(LocalDate startDate, LocalDate endDate) {
-        super("SELECT borough, sum(new_deaths) AS borough_deaths, sum(new_cases) AS borough_cases " +
-                "FROM covid_london " +
-                "WHERE date BETWEEN '" + startDate + "'  AND '" + endDate + "' GROUP BY borough");
-
         this.startDate = startDate;
         this.endDate = endDate;
     }
 
+    /**
+     * Method to prepare the map screen off the JavaFX Application Thread.
+     * <p>
+     * This method loads the map frame in the background while it reads the outlines of the boroughs, if they have not
+     * been read yet, and fetches the borough totals and the deaths in the period, so that beginLoading only has to set
+     * up the panel.
+     */
+    @Override
+    public void prepare() {
+        CompletableFuture<AnchorPane> frame = ViewLoader.loadInBackground(this, "map-frame.fxml",
+                "default.css", "map-view.css");
+        BoroughGeometry.getInstance();
+        super.prefetch(new QueryBatch(this.boroughTotalsQuery(), this.periodDeathsQuery()));
+        parent = frame.join();
+    }
+
     /**
      * Method to begin loading the map screen.
      * <p>
@@ -94,15 +146,8 @@ public class MapController extends AbstractController {
      */
     @Override
     public void beginLoading() {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("../../resources/fxml/map-frame.fxml"));
-        loader.setController(this);
-
-        try {
-            parent = loader.load();
-            parent.getStylesheets().add(Objects.requireNonNull(getClass().getResource("../../resources/styles/default.css")).toExternalForm());
-            parent.getStylesheets().add(Objects.requireNonNull(getClass().getResource("../../resources/styles/map-view.css")).toExternalForm());
-        } catch (IOException e) {
-            System.out.println("Error loading the map frame!" + e.getMessage() + e.getCause() + Arrays.toString(e.getStackTrace()) + e.getLocalizedMessage());
+        if (parent == null) {
+            this.loadFrame();
         }
 
         this.setMapPanel();
@@ -110,6 +155,13 @@ public class MapController extends AbstractController {
         scene = new Scene(parent, 960, 600, Color.WHITE);
     }
 
+    /**
+     * Method to load the map frame from its FXML file, along with its stylesheets.
+     */
+    private void loadFrame() {
+        parent = ViewLoader.load(this, "map-frame.fxml", "default.css", "map-view.css");
+    }
+
     /**
      * Method to set the map panel.
      * <p>
@@ -123,13 +175,84 @@ public class MapController extends AbstractController {
         this.setForwardButton();
         this.setMouseEvents(true);
         this.setStackPane();
-        super.runBackgroundTask(super.queryDatabase(), () -> {
-            this.processQuery();
-            this.getPeriodDeaths();
+        this.refreshMap();
+    }
+
+    /**
+     * Method to show another date range on the map.
+     * <p>
+     * This method fetches the totals for the new range, then colours the boroughs and sets their hover text from them.
+     * The map itself, and whichever borough is selected, are kept.
+     *
+     * @param startDate The start date of the date range
+     * @param endDate   The end date of the date range
+     */
+    @Override
+    public void updateDateRange(LocalDate startDate, LocalDate endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.refreshMap();
+    }
+
+    /**
+     * Method to fetch the totals for the date range and show them on the map, drawing the map the first time.
+     * If the range changes before the totals arrive, they are not shown. If they could not be fetched, the map shows
+     * that there is no data for the range.
+     */
+    private void refreshMap() {
+        int generation = ++rangeGeneration;
+        QueryBatch batch = new QueryBatch(this.boroughTotalsQuery(), this.periodDeathsQuery());
+        super.runBackgroundTask(super.queryDatabase(batch), results -> this.showTotals(generation, results),
+                () -> this.showTotals(generation, List.of(QueryResult.empty(), QueryResult.empty())));
+    }
+
+    /**
+     * Method to show the totals for a date range on the map, drawing the map the first time, unless the range has
+     * changed since they were asked for.
+     */
+    private void showTotals(int generation, List<QueryResult> results) {
+        if (generation != rangeGeneration) {
+            return;
+        }
+        data = results.get(0);
+        this.processQuery();
+        if (!mapDrawn) {
             this.drawMap();
-        });
+            mapDrawn = true;
+        }
+        if (data.isEmpty()) {
+            this.showNoData();
+            return;
+        }
+        this.clearNoData();
 
+        QueryResult periodResult = results.get(1);
+        int periodDeaths = periodResult.isEmpty() ? 0 : periodResult.getInt(0, "period_deaths");
+        this.setBoroughColours(periodDeaths);
+    }
 
+    /**
+     * Method to create the query for the number of cases and deaths in each borough in the selected date range.
+     */
+    private Query boroughTotalsQuery() {
+        // The dates are copied, so the query keeps its range if the map is moved to another one while it runs.
+        LocalDate start = startDate;
+        LocalDate end = endDate;
+        return new Query("SELECT borough, sum(new_deaths) AS borough_deaths, sum(new_cases) AS borough_cases " +
+                "FROM covid_london " +
+                "WHERE date BETWEEN ? AND ? GROUP BY borough", start, end)
+                .withLocalPlan(table -> table.boroughTotals(start, end));
+    }
+
+    /**
+     * Method to create the query for the number of deaths in London in the selected date range.
+     */
+    private Query periodDeathsQuery() {
+        LocalDate start = startDate;
+        LocalDate end = endDate;
+        return new Query("SELECT sum(new_deaths) as period_deaths FROM covid_london WHERE date BETWEEN ? AND ?",
+                start, end)
+                .withLocalPlan(table -> table.periodDeaths(start, end));
     }
 
     /**
@@ -140,7 +263,7 @@ public class MapController extends AbstractController {
      * ensure the image is not distorted.
      */
     private void setBackround() {
-        map_frame.setImage(AssetLoader.MAP_FRAME);
+        map_frame.setImage(AssetLoader.getImage(AssetLoader.MAP_FRAME, 960, 600, true));
         map_frame.setFitWidth(960);
         map_frame.setFitHeight(600);
         map_frame.setPreserveRatio(true);
@@ -154,7 +277,7 @@ public class MapController extends AbstractController {
      * to true to ensure the image is not distorted.
      */
     private void setSelectLocationText() {
-        select_location.setImage(AssetLoader.SELECT_LOCATION);
+        select_location.setImage(AssetLoader.getImage(AssetLoader.SELECT_LOCATION, 180, 100, true));
         select_location.setFitWidth(180);
         select_location.setFitHeight(100);
         select_location.setPreserveRatio(true);
@@ -223,36 +346,178 @@ public class MapController extends AbstractController {
     /**
      * Method to draw the map.
      * <p>
-     * This method draws the map by reading the coordinates of the boroughs from a file and creating SVG paths for each
-     * borough. The SVG paths are then added to the map group.
+     * This method draws the map by creating an SVG path for each borough from the outlines kept by BoroughGeometry,
+     * which reads them from their file once for the whole application. The SVG paths are then added to the map group.
+     * Maps with too many regions for a node each are drawn onto a canvas instead. Either way, the outlines are drawn at
+     * the level of detail for the scale of the map group, and the map can then be zoomed and panned.
      */
     private void drawMap() {
-        File file = new File("/home/enzozbest/IdeaProjects/ppacoursework4/src/resources/map/london_boroughs_rough.coords");
-        try {
-            Scanner reader = new Scanner(file);
-            while (reader.hasNext()) {
-                String boroughCoordinates = reader.nextLine();
-                String[] coordinates = boroughCoordinates.split(":");
-                String svgPath = "M" + coordinates[1].replace(",", "") + " Z";
-                String boroughName = coordinates[0];
-
-                SVGPath boroughBoundary = new SVGPath();
-                boroughBoundary.setContent(svgPath);
-                boroughBoundary.setId("tile_" + String.join("", boroughName.split(" ")).toLowerCase());
-
-                boroughBoundary.getStyleClass().clear();
-                boroughBoundary.getStyleClass().add("clickable");
-                boroughBoundary.getStyleClass().add("hoverable");
-
-                setBoroughClickEvent(boroughBoundary, boroughName);
-                setBoroughHoverEvent(true, boroughBoundary, boroughName);
-
-                map_group.getChildren().add(boroughBoundary);
+        BoroughGeometry geometry = BoroughGeometry.getInstance();
+        baseScaleX = map_group.getScaleX();
+        baseScaleY = map_group.getScaleY();
+        detailLevel = geometry.levelFor(this.pixelsPerUnit());
+
+        if (FORCE_CANVAS || geometry.getBoroughNames().size() > CANVAS_REGION_THRESHOLD) {
+            this.drawCanvasMap(geometry);
+        } else {
+            this.drawTiles(geometry);
+        }
+        this.setZoomAndPanEvents();
+    }
+
+    /**
+     * Method to draw the map with an SVG path for each borough.
+     */
+    private void drawTiles(BoroughGeometry geometry) {
+        for (String boroughName : geometry.getBoroughNames()) {
+            SVGPath boroughBoundary = geometry.createPath(boroughName, detailLevel);
+            boroughTiles.put(boroughName, boroughBoundary);
+
+            boroughBoundary.getStyleClass().clear();
+            boroughBoundary.getStyleClass().add("clickable");
+            boroughBoundary.getStyleClass().add("hoverable");
+
+            setBoroughClickEvent(boroughBoundary, boroughName);
+            setBoroughHoverEvent(true, boroughBoundary, boroughName);
+
+            map_group.getChildren().add(boroughBoundary);
+        }
+    }
+
+    /**
+     * Method to draw the map onto a canvas.
+     * <p>
+     * This method draws every borough onto a single canvas, which is added to the map group in place of the SVG paths.
+     * Hovering over a borough shows its data until a borough is clicked, and clicking a borough selects it, as on the
+     * map drawn with SVG paths.
+     */
+    private void drawCanvasMap(BoroughGeometry geometry) {
+        // The full outlines give the bounds of each region, and are then swapped for those of the level to draw.
+        canvasMap = new CanvasMap(geometry.getOutlines());
+        canvasMap.setOutlines(geometry.getOutlines(detailLevel));
+        canvasMap.setResolution(this.pixelsPerUnit());
+        canvasMap.setOnRegionHovered(boroughName -> {
+            if (hoverDisabled) {
+                return;
             }
+            if (boroughName == null) {
+                this.hideBoroughDetails();
+                return;
+            }
+            String[] texts = hoverTexts.getOrDefault(boroughName, NO_RECORD_TEXTS);
+            this.showBoroughDetails(boroughName, texts[0], texts[1]);
+        });
+        canvasMap.setOnRegionClicked(boroughName -> {
+            hoverDisabled = true;
+            this.hideBoroughDetails();
+            this.showSelectedBorough(boroughName);
+        });
+        map_group.getChildren().add(canvasMap.getCanvas());
+    }
 
-        } catch (IOException e) {
-            System.out.println("Error reading the coordinates file! " + e.getMessage() + e.getCause() + e.getStackTrace());
+    /**
+     * Method to set the events to zoom and pan the map.
+     * <p>
+     * This method keeps the space the map takes when it is first drawn, and clips the map to it, so zooming in never
+     * draws the map over the rest of the panel. Scrolling zooms the map and dragging pans it.
+     */
+    private void setZoomAndPanEvents() {
+        mapViewport = map_group.getBoundsInParent();
+        this.updateClip();
+        map_group.setOnScroll(this::zoomMap);
+        map_group.setOnMousePressed(event -> {
+            dragX = event.getSceneX();
+            dragY = event.getSceneY();
+        });
+        map_group.setOnMouseDragged(this::panMap);
+    }
+
+    /**
+     * Method to zoom the map in or out around the cursor.
+     * <p>
+     * The point of the map under the cursor is found before the map is scaled, and the map is then moved so that the
+     * same point is under the cursor again. Zooming all the way out puts the map back where it started.
+     */
+    private void zoomMap(ScrollEvent event) {
+        event.consume();
+        if (event.getDeltaY() == 0) {
+            return;
+        }
+        double factor = event.getDeltaY() > 0 ? ZOOM_FACTOR : 1 / ZOOM_FACTOR;
+        double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        if (newZoom == zoom) {
+            return;
         }
+
+        Point2D anchor = map_group.sceneToLocal(event.getSceneX(), event.getSceneY());
+        zoom = newZoom;
+        map_group.setScaleX(baseScaleX * zoom);
+        map_group.setScaleY(baseScaleY * zoom);
+        if (zoom == MIN_ZOOM) {
+            map_group.setTranslateX(0);
+            map_group.setTranslateY(0);
+        } else {
+            Point2D moved = map_group.localToScene(anchor);
+            map_group.setTranslateX(map_group.getTranslateX() + event.getSceneX() - moved.getX());
+            map_group.setTranslateY(map_group.getTranslateY() + event.getSceneY() - moved.getY());
+        }
+
+        this.updateClip();
+        this.updateDetailLevel();
+    }
+
+    /**
+     * Method to pan the map by the distance the cursor was dragged. The map can only be panned once zoomed in.
+     */
+    private void panMap(MouseEvent event) {
+        event.consume();
+        double deltaX = event.getSceneX() - dragX;
+        double deltaY = event.getSceneY() - dragY;
+        dragX = event.getSceneX();
+        dragY = event.getSceneY();
+        if (zoom == MIN_ZOOM) {
+            return;
+        }
+        map_group.setTranslateX(map_group.getTranslateX() + deltaX);
+        map_group.setTranslateY(map_group.getTranslateY() + deltaY);
+        this.updateClip();
+    }
+
+    /**
+     * Method to clip the map to the space it took when it was first drawn, wherever it has been zoomed or panned to.
+     */
+    private void updateClip() {
+        Bounds visible = map_group.parentToLocal(mapViewport);
+        map_group.setClip(new Rectangle(visible.getMinX(), visible.getMinY(), visible.getWidth(), visible.getHeight()));
+    }
+
+    /**
+     * Method to draw the outlines at the level of detail for the current zoom, if it has changed.
+     */
+    private void updateDetailLevel() {
+        BoroughGeometry geometry = BoroughGeometry.getInstance();
+        if (canvasMap != null) {
+            canvasMap.setResolution(this.pixelsPerUnit());
+        }
+        int level = geometry.levelFor(this.pixelsPerUnit());
+        if (level == detailLevel) {
+            return;
+        }
+        detailLevel = level;
+        if (canvasMap != null) {
+            canvasMap.setOutlines(geometry.getOutlines(level));
+            return;
+        }
+        for (Map.Entry<String, SVGPath> tile : boroughTiles.entrySet()) {
+            tile.getValue().setContent(geometry.getPath(tile.getKey(), level));
+        }
+    }
+
+    /**
+     * Method to find the number of pixels on screen per unit of the coordinates of the outlines.
+     */
+    private double pixelsPerUnit() {
+        return Math.abs(baseScaleX) * zoom;
     }
 
     /**
@@ -260,20 +525,55 @@ public class MapController extends AbstractController {
      */
     private void setBoroughClickEvent(SVGPath boroughBoundary, String boroughName) {
         boroughBoundary.setOnMouseClicked(event -> {
+            if (!event.isStillSincePress()) {
+                return;
+            }
             this.disableHover();
 
-            boroughBoundary.getStyleClass().add("clicked");
+            if (!boroughBoundary.getStyleClass().contains("clicked")) {
+                boroughBoundary.getStyleClass().add("clicked");
+            }
             boroughBoundary.getStyleClass().remove("clickable");
             boroughBoundary.getStyleClass().remove("hoverable");
 
-            stack_button.setOnMouseClicked(mouseEvent -> createBoroughView(boroughName, startDate, endDate));
-            stack_button.setVisible(true);
+            this.showSelectedBorough(boroughName);
+            this.deselectTile(boroughBoundary);
+        });
+    }
 
-            stack_borough_name.setText(boroughName);
-            stack_borough_name.setVisible(true);
+    /**
+     * Method to show the name of the borough clicked, along with the button to view its data.
+     */
+    private void showSelectedBorough(String boroughName) {
+        selectedBorough = boroughName;
+        stack_button.setOnMouseClicked(mouseEvent -> createBoroughView(boroughName, startDate, endDate));
+        stack_button.setVisible(true);
 
-            this.setStylesOtherBoroughs(boroughBoundary.getId());
-        });
+        stack_borough_name.setText(boroughName);
+        stack_borough_name.setVisible(true);
+    }
+
+    /**
+     * Method to show the name and data of the borough hovered over.
+     */
+    private void showBoroughDetails(String boroughName, String totalCasesText, String deathsText) {
+        stack_borough_name.setText(boroughName);
+        stack_borough_name.setVisible(true);
+
+        stack_total_cases.setText(totalCasesText);
+        stack_total_cases.setVisible(true);
+
+        stack_borough_deaths.setText(deathsText);
+        stack_borough_deaths.setVisible(true);
+    }
+
+    /**
+     * Method to hide the name and data of the borough the cursor has left.
+     */
+    private void hideBoroughDetails() {
+        stack_borough_name.setVisible(false);
+        stack_total_cases.setVisible(false);
+        stack_borough_deaths.setVisible(false);
     }
 
     /**
@@ -289,25 +589,20 @@ public class MapController extends AbstractController {
     }
 
     /**
-     * Method to send every borough apart from the one whose id is passed as a parameter to the back.
+     * Method to send the borough clicked before back, now that another one has been clicked.
+     * <p>
+     * Only one borough is ever selected, so only that one has to be restyled, rather than every other borough.
      */
-    private void setStylesOtherBoroughs(String id) {
-        ArrayList<String> ids = new ArrayList<>();
-        for (Node path : map_group.getChildren()) {
-            if (path.getId().equals(id)) {
-                continue;
-            }
-            ids.add(path.getId());
-        }
-        for (String boroughID : ids) {
-            SVGPath borough = (SVGPath) parent.lookup("#" + boroughID);
-            borough.setScaleX(1);
-            borough.setScaleY(1);
-            borough.getStyleClass().remove("clicked");
-            borough.getStyleClass().remove("hoverable-scaling");
-            borough.getStyleClass().add("clickable");
-            borough.getStyleClass().add("hoverable");
+    private void deselectTile(SVGPath clickedTile) {
+        SVGPath previous = selectedTile;
+        selectedTile = clickedTile;
+        if (previous == null || previous == clickedTile) {
+            return;
         }
+        previous.setScaleX(1);
+        previous.setScaleY(1);
+        previous.getStyleClass().remove("clicked");
+        previous.getStyleClass().addAll("clickable", "hoverable");
     }
 
     /**
@@ -315,26 +610,16 @@ public class MapController extends AbstractController {
      */
     private void setBoroughHoverEvent(boolean setting, SVGPath boroughBoundary, String boroughName) {
         if (setting) {
-            boroughBoundary.setOnMouseEntered(event -> {
-                boroughBoundary.getStyleClass().add("hoverable-scaling");
-
-                parent.lookup("#" + boroughBoundary.getId()).toFront();
+            boroughBoundary.getStyleClass().add("hoverable-scaling");
 
-                stack_borough_name.setText(boroughName);
-                stack_borough_name.setVisible(true);
-
-                stack_total_cases.setText("Total Cases: " + localBoroughRecords.get(boroughName)[0]);
-                stack_total_cases.setVisible(true);
-
-                stack_borough_deaths.setText("Deaths: " + localBoroughRecords.get(boroughName)[1]);
-                stack_borough_deaths.setVisible(true);
+            boroughBoundary.setOnMouseEntered(event -> {
+                boroughBoundary.toFront();
+                String[] texts = hoverTexts.getOrDefault(boroughName, NO_RECORD_TEXTS);
+                this.showBoroughDetails(boroughName, texts[0], texts[1]);
             });
             boroughBoundary.setOnMouseExited(event -> {
-                stack_borough_name.setVisible(false);
-                stack_total_cases.setVisible(false);
-                stack_borough_deaths.setVisible(false);
-
-                parent.lookup("#" + boroughBoundary.getId()).toBack();
+                this.hideBoroughDetails();
+                boroughBoundary.toBack();
             });
 
             return;
@@ -350,30 +635,16 @@ public class MapController extends AbstractController {
 
     /**
      * Method to change the hover event for the boroughs on the map after the first click on a borough has happened.
+     * It only has to be done once, so later clicks return straight away.
      */
     private void disableHover() {
-        for (Node path : map_group.getChildren()) {
-            SVGPath svgPath = (SVGPath) path;
-            this.setBoroughHoverEvent(false, svgPath, path.getId().substring(5));
+        if (hoverDisabled) {
+            return;
+        }
+        hoverDisabled = true;
+        for (Map.Entry<String, SVGPath> tile : boroughTiles.entrySet()) {
+            this.setBoroughHoverEvent(false, tile.getValue(), tile.getKey());
         }
-    }
-
-    /**
-     * Method to get the number of deaths in the selected date range.
-     */
-    private void getPeriodDeaths() {
-        Query query = new Query("SELECT sum(new_deaths) as period_deaths FROM covid_london WHERE date BETWEEN '" + startDate + "' AND '" + endDate + "'");
-
-        Task<ResultSet> task = super.queryDatabase(query);
-        runBackgroundTask(task, () -> {
-            try {
-                ResultSet set = task.get();
-                int periodDeaths = set.next() ? set.getInt("period_deaths") : 0;
-                setBoroughColours(periodDeaths);
-            } catch (SQLException | ExecutionException | InterruptedException e) {
-
-            }
-        });
     }
 
     /**
@@ -386,22 +657,67 @@ public class MapController extends AbstractController {
      * 2-3% deaths: orange
      * 3-4% deaths: red
      * 4%+ deaths: dark red
+     * <p>
+     * Every borough on the map is coloured, so a borough with no records in the date range is coloured as having no
+     * deaths, rather than keeping the colour it had for another range.
      */
     private void setBoroughColours(int periodDeaths) {
-        for (String boroughName : localBoroughRecords.keySet()) {
+        for (String boroughName : BoroughGeometry.getInstance().getBoroughNames()) {
+            Integer[] records = localBoroughRecords.get(boroughName);
             double death_percentage;
-            if (periodDeaths == 0) {
+            if (periodDeaths == 0 || records == null) {
                 death_percentage = 0;
             } else {
-                death_percentage = (double) localBoroughRecords.get(boroughName)[1] / periodDeaths;
+                death_percentage = (double) records[1] / periodDeaths;
             }
+            this.fillBorough(boroughName, findColour(death_percentage));
+        }
+    }
 
-            String colour = findColour(death_percentage);
-            SVGPath tile = (SVGPath) parent.lookup("#tile_" + String.join("", boroughName.split(" ")).toLowerCase());
+    /**
+     * Method to fill a borough on the map with a colour.
+     */
+    private void fillBorough(String boroughName, String colour) {
+        if (canvasMap != null) {
+            canvasMap.setFill(boroughName, Color.web(colour));
+            return;
+        }
+        SVGPath tile = boroughTiles.get(boroughName);
+        if (tile != null) {
             tile.setStyle("-fx-background-color: " + colour + "; -fx-fill: " + colour + ";");
         }
     }
 
+    /**
+     * Method to show that no data could be loaded for the date range.
+     * <p>
+     * This method greys out every borough, so none of them shows the colour of another range, and says so in place of
+     * the details of a borough. The "View Borough" button is hidden until data has been loaded.
+     */
+    private void showNoData() {
+        noDataShown = true;
+        for (String boroughName : BoroughGeometry.getInstance().getBoroughNames()) {
+            this.fillBorough(boroughName, NO_DATA_COLOUR);
+        }
+        stack_button.setVisible(false);
+        this.showBoroughDetails("No data for this date range", "Total Cases: -", "Deaths: -");
+    }
+
+    /**
+     * Method to remove the message shown when no data could be loaded, once data has been loaded again, showing the
+     * borough that was selected before, if any.
+     */
+    private void clearNoData() {
+        if (!noDataShown) {
+            return;
+        }
+        noDataShown = false;
+        this.hideBoroughDetails();
+        if (selectedBorough != null) {
+            this.showSelectedBorough(selectedBorough);
+        }
+    }
+
 
     /**
      * Method to find the colour for the borough based on the number of deaths.
@@ -435,17 +751,18 @@ public class MapController extends AbstractController {
      * <p>
      * This method processes the query for the map by iterating through the data and storing the data in a map.
      * The map stores the borough name as the key and an array of the number of cases and deaths as the value.
-     * The map is then stored in the localBoroughRecords field.
+     * The map is then stored in the localBoroughRecords field. The text shown when each borough is hovered over is
+     * built from it here, once for each date range, rather than each time a borough is hovered over.
      */
     private void processQuery() {
         this.localBoroughRecords = new HashMap<>();
-        try {
-            while (data.next()) {
-                Integer[] records = {data.getInt("borough_cases"), data.getInt("borough_deaths")};
-                localBoroughRecords.put(data.getString("borough"), records);
-            }
-        } catch (SQLException e) {
-            System.out.println("Error generating covid records");
+        Map<String, String[]> texts = new HashMap<>();
+        for (int row = 0; row < data.size(); row++) {
+            Integer[] records = {data.getInt(row, "borough_cases"), data.getInt(row, "borough_deaths")};
+            String boroughName = data.getString(row, "borough");
+            localBoroughRecords.put(boroughName, records);
+            texts.put(boroughName, new String[]{"Total Cases: " + records[0], "Deaths: " + records[1]});
         }
+        this.hoverTexts = texts;
     }
 }
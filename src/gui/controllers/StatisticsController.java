@@ -1,19 +1,18 @@
 package gui.controllers;
 
 import gui.components.AssetLoader;
+import gui.components.ViewLoader;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.text.Text;
+import utils.sql.queries.Query;
 
-import java.io.IOException;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller class for the Statistics screen.
@@ -28,11 +27,13 @@ import java.util.Arrays;
  * The user can navigate between the statistics using the next and previous buttons.
  * The user can also return to the map frame using the back button, as well as proceed forward to the Graphs screen using
  * the forward button.
+ * <p>
+ * When the user selects another date range, the statistics for it are fetched and shown on the same scene.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.25
  */
-public class StatisticsController extends AbstractController {
+public class StatisticsController extends AbstractController implements DateRangeController {
 
     @FXML
     private Label statistic, title, subtitle;
@@ -44,6 +45,7 @@ public class StatisticsController extends AbstractController {
     private AnchorPane parent;
     private LocalDate startDate, endDate;
     private int currentStatistic;
+    private int rangeGeneration;
 
     /**
      * No-argument Constructor for the AbstractController class.
@@ -58,16 +60,24 @@ public class StatisticsController extends AbstractController {
      * @param endDate   The end date of the date range
      */
     public StatisticsController(LocalDate startDate, LocalDate endDate) {
-        super("SELECT avg(retail_and_recreation) AS avg_ret_rec, avg(workplaces) AS avg_wp, sum(new_deaths)" +
-                "AS period_deaths, avg(total_cases) AS avg_period_cases " +
-                "FROM covid_london " +
-                "WHERE date BETWEEN '" + startDate + "'  AND '" + endDate + "'");
+        super(statisticsQuery(startDate, endDate));
         this.startDate = startDate;
         this.endDate = endDate;
         statistics = new ArrayList<>();
         currentStatistic = 0;
     }
 
+    /**
+     * Method to create the query for the statistics of London in a date range.
+     */
+    private static Query statisticsQuery(LocalDate startDate, LocalDate endDate) {
+        return new Query("SELECT avg(retail_and_recreation) AS avg_ret_rec, avg(workplaces) AS avg_wp, " +
+                "sum(new_deaths) AS period_deaths, avg(total_cases) AS avg_period_cases " +
+                "FROM covid_london " +
+                "WHERE date BETWEEN ? AND ?", startDate, endDate)
+                .withLocalPlan(table -> table.londonStatistics(startDate, endDate));
+    }
+
     /**
      * Method to begin loading the statistics frame.
      * <p>
@@ -77,14 +87,8 @@ public class StatisticsController extends AbstractController {
      */
     @Override
     public void beginLoading() {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("../../resources/fxml/statistics-frame.fxml"));
-        loader.setController(this);
-
-        try {
-            parent = loader.load();
-            parent.getStylesheets().add(getClass().getResource("../../resources/styles/default.css").toExternalForm());
-        } catch (IOException e) {
-            System.out.println("Error loading the statistics frame! " + e.getCause() + e.getMessage() + Arrays.toString(e.getStackTrace()));
+        if (parent == null) {
+            this.loadFrame();
         }
 
         this.setStatsPanel();
@@ -92,18 +96,68 @@ public class StatisticsController extends AbstractController {
         scene = new Scene(parent, 960, 600);
     }
 
+    /**
+     * Method to prepare the statistics frame off the JavaFX Application Thread.
+     * <p>
+     * This method loads the statistics frame in the background while it fetches the statistics, so that beginLoading
+     * only has to set up the panel.
+     */
+    @Override
+    public void prepare() {
+        CompletableFuture<AnchorPane> frame = ViewLoader.loadInBackground(this, "statistics-frame.fxml", "default.css");
+        super.prepare();
+        parent = frame.join();
+    }
+
+    /**
+     * Method to load the statistics frame from its FXML file, along with its stylesheet.
+     */
+    private void loadFrame() {
+        parent = ViewLoader.load(this, "statistics-frame.fxml", "default.css");
+    }
+
+    /**
+     * Method to show the statistics for another date range on the statistics frame.
+     * <p>
+     * This method fetches the statistics for the new range and shows them in place of the old ones, keeping the
+     * statistic the user was looking at.
+     *
+     * @param startDate The start date of the date range
+     * @param endDate   The end date of the date range
+     */
+    @Override
+    public void updateDateRange(LocalDate startDate, LocalDate endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        super.setQuery(statisticsQuery(startDate, endDate));
+        this.refreshStatistics();
+    }
+
+    /**
+     * Method to fetch the statistics for the date range and display them, unless the range changes before they arrive.
+     */
+    private void refreshStatistics() {
+        int generation = ++rangeGeneration;
+        super.runBackgroundTask(super.queryDatabase(), () -> {
+            if (generation != rangeGeneration) {
+                return;
+            }
+            statistics = retrieveStatistics();
+            displayNextStatistic();
+        });
+    }
+
     /**
      * Method to retrieve the statistics from the database.
      */
     private ArrayList<Double> retrieveStatistics() {
         ArrayList<Double> ret = new ArrayList<>();
-        try {
-            data.next();
-            for (int i = 1; i <= 4; i++) {
-                ret.add(data.getDouble(i));
-            }
-        } catch (SQLException e) {
-            System.out.println("Error generating result set! \n" + e.getMessage() + "\n" + e.getCause() + "\n" + Arrays.toString(e.getStackTrace()));
+        if (data.isEmpty()) {
+            System.out.println("Error generating result set! \n The statistics query returned no rows.");
+            return ret;
+        }
+        for (String column : new String[]{"avg_ret_rec", "avg_wp", "period_deaths", "avg_period_cases"}) {
+            ret.add(data.getDouble(0, column));
         }
         return ret;
     }
@@ -123,10 +177,7 @@ public class StatisticsController extends AbstractController {
         this.setPrevButton();
         this.setSmallCharacter();
 
-        super.runBackgroundTask(super.queryDatabase(), () -> {
-            statistics = retrieveStatistics();
-            displayNextStatistic();
-        });
+        this.refreshStatistics();
 
         this.setMouseEvents(true);
     }
@@ -142,9 +193,15 @@ public class StatisticsController extends AbstractController {
      * 4. Average Total Cases
      * <p>
      * The method wraps around the list of statistics, so that when the last statistic is displayed, the first statistic
-     * is displayed next.
+     * is displayed next. If the statistics could not be retrieved, the method shows that there is no data instead.
      */
     private void displayNextStatistic() {
+        if (statistics.isEmpty()) {
+            title.setText("No data for this date range");
+            subtitle.setText("London: " + startDate + " to " + endDate);
+            statistic.setText("-");
+            return;
+        }
         int wrappedIndex = (currentStatistic + 4) % 4;
 
         switch (wrappedIndex) {
@@ -207,7 +264,7 @@ public class StatisticsController extends AbstractController {
      * Method to set the background image.
      */
     private void setBackground() {
-        background.setImage(AssetLoader.STATS_BACKGROUND);
+        background.setImage(AssetLoader.getImage(AssetLoader.STATS_BACKGROUND, 960, 600, true));
         background.setFitWidth(960);
         background.setFitHeight(600);
         background.setPreserveRatio(true);
@@ -242,7 +299,7 @@ public class StatisticsController extends AbstractController {
      * style class "clickable" to the next button to ensure correct styling.
      */
     private void setNextButton() {
-        next.setImage(AssetLoader.ARROW);
+        next.setImage(AssetLoader.getImage(AssetLoader.ARROW, 110, 40, true));
         next.setFitWidth(110);
         next.setFitHeight(40);
         next.setPreserveRatio(true);
@@ -256,7 +313,7 @@ public class StatisticsController extends AbstractController {
      * style class "clickable" to the previous button to ensure correct styling.
      */
     private void setPrevButton() {
-        prev.setImage(AssetLoader.ARROW);
+        prev.setImage(AssetLoader.getImage(AssetLoader.ARROW, 110, 40, true));
         prev.setScaleX(-1);
         prev.setFitWidth(110);
         prev.setFitHeight(40);
@@ -270,7 +327,7 @@ public class StatisticsController extends AbstractController {
      * This method sets the small character image by setting the image, size, and preserve ratio for it.
      */
     private void setSmallCharacter() {
-        small_character.setImage(AssetLoader.SMALL_CHARACTER);
+        small_character.setImage(AssetLoader.getImage(AssetLoader.SMALL_CHARACTER, 275, 264, true));
         small_character.setFitWidth(275);
         small_character.setFitHeight(264);
         small_character.setPreserveRatio(true);
@@ -2,10 +2,12 @@ package gui.controllers;
 
 import gui.SceneInitialiser;
 import gui.components.AssetLoader;
+import gui.components.ViewLoader;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Cursor;
 import javafx.scene.Node;
 import javafx.scene.Scene;
@@ -14,12 +16,10 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
+import utils.DateRange;
+import utils.store.CovidStore;
 
-import java.io.IOException;
-import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.Arrays;
-import java.util.Objects;
 
 /**
  * Controller for the Welcome screen.
@@ -27,13 +27,17 @@ import java.util.Objects;
  * This controller is responsible for the Welcome screen, which is the first screen the user sees when they open the application.
  * The Welcome screen allows the user to select a date range to view data for, and then proceed to the main application.
  * The user can select a date range by selecting a start date and an end date from the drop-down menus.
+ * <p>
+ * The selected range is published through the dateRange property, which holds null while the selection is incomplete
+ * or invalid. Other parts of the application listen to it to build the scenes for the range.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.24
  */
 public class WelcomeController extends AbstractController {
 
     private final BooleanProperty isValidDateRange;
+    private final ReadOnlyObjectWrapper<DateRange> dateRange;
 
     @FXML
     private ImageView welcomeBackdrop, guiTitle, guiSubtitle, guiCharacter;
@@ -51,6 +55,7 @@ public class WelcomeController extends AbstractController {
     public WelcomeController() {
         super("SELECT DISTINCT `date` FROM covid_london ORDER BY `date` ASC");
         isValidDateRange = new SimpleBooleanProperty(false);
+        dateRange = new ReadOnlyObjectWrapper<>();
     }
 
     /**
@@ -58,23 +63,17 @@ public class WelcomeController extends AbstractController {
      * <p>
      * This method loads the welcome screen from the welcome-screen.fxml file and sets the controller to this class.
      * It then calls the setWelcomePanel() method to set the welcome panel, which includes the backdrop, title, subtitle,
-     * and character for the welcome screen
+     * and character for the welcome screen.
+     * <p>
+     * While the user chooses the dates, the covid_london table is loaded into memory in the background, so that the
+     * following scenes can be built from it.
      */
     @Override
     public void beginLoading() {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("../../resources/fxml/welcome-screen.fxml"));
-        loader.setController(this);
-
-        try {
-            parent = loader.load();
-            parent.getStylesheets().add(Objects.requireNonNull(getClass()
-                    .getResource("../../resources/styles/default.css")).toExternalForm());
-        } catch (IOException e) {
-            System.out.println("Error loading welcome-screen.fxml \n" + e.getMessage() + "\n" + e.getCause() + "\n" +
-                    Arrays.toString(e.getStackTrace()));
-        }
+        parent = ViewLoader.load(this, "welcome-screen.fxml", "default.css");
 
         this.setWelcomePanel();
+        CovidStore.getInstance().loadInBackground();
 
         scene = new Scene(parent, 960, 600);
     }
@@ -112,9 +111,9 @@ public class WelcomeController extends AbstractController {
 
         isValidDateRange.addListener((observableValue, oldValue, newValue) -> {
             if (newValue) {
-                guiSubtitle.setImage(AssetLoader.PRESS_TO_START);
+                guiSubtitle.setImage(AssetLoader.getImage(AssetLoader.PRESS_TO_START, 484, 66, false));
             } else {
-                guiSubtitle.setImage(AssetLoader.INVALID_DATE_RANGE);
+                guiSubtitle.setImage(AssetLoader.getImage(AssetLoader.INVALID_DATE_RANGE, 484, 66, false));
             }
         });
     }
@@ -127,7 +126,8 @@ public class WelcomeController extends AbstractController {
      * When the user corrects the dates, the error message is hidden.
      * <p>
      * Upon validation, the isValidDateRange property is set to true or false, and the style class and mouse events
-     * for the subtitle are set accordingly.
+     * for the subtitle are set accordingly. The dateRange property is then set to the selected range, or to null if it
+     * is invalid.
      */
     private void setInteractiveElements() {
         if (from.getValue() == null || to.getValue() == null) {
@@ -143,6 +143,7 @@ public class WelcomeController extends AbstractController {
             toDate = null;
             this.setStyleClass("clickable", false);
             this.setMouseEvents(false);
+            dateRange.set(null);
             return;
         }
 
@@ -151,14 +152,7 @@ public class WelcomeController extends AbstractController {
         toDate = end;
         this.setStyleClass("clickable", true);
         this.setMouseEvents(true);
-        SceneInitialiser initialiser = SceneInitialiser.getInstance();
-
-        int numberOfUpdates = SceneInitialiser.numberOfUpdates;
-
-        //Check if it is the first time the scenes are created. If so, do not update. Otherwise, trigger update sequence.
-        if (numberOfUpdates >= 1) {
-            initialiser.updateScenes();
-        }
+        dateRange.set(new DateRange(start, end));
     }
 
     /**
@@ -166,6 +160,7 @@ public class WelcomeController extends AbstractController {
      * <p>
      * This method sets the mouse events for the subtitle by adding or removing the specified events from the subtitle.
      * This is used to change the behaviour of the subtitle when the date range is valid or invalid.
+     * Clicks are ignored while the scenes for the selected range are still being built.
      */
     private void setMouseEvents(boolean setEventsFlag) {
         if (setEventsFlag) {
@@ -173,6 +168,9 @@ public class WelcomeController extends AbstractController {
                 Stage stage = (Stage) ((Node) mouseEvent.getSource()).getScene().getWindow();
 
                 Scene mapScene = SceneInitialiser.SCENES.get("map");
+                if (mapScene == null) {
+                    return;
+                }
                 stage.setScene(mapScene);
                 mapScene.setCursor(Cursor.DEFAULT);
                 mapScene.getRoot().setCursor(Cursor.DEFAULT);
@@ -211,18 +209,13 @@ public class WelcomeController extends AbstractController {
     /**
      * Method to set the available dates in the ComboBoxes.
      * <p>
-     * This method sets the available dates in the ComboBoxes by iterating over the ResultSet from the database query.
+     * This method sets the available dates in the ComboBoxes by iterating over the result of the database query.
      */
     private void setAvailableDates() {
-        try {
-            while (data.next()) {
-                String date = data.getString("date").split(" ")[0];
-                from.getItems().add(date);
-                to.getItems().add(date);
-            }
-        } catch (SQLException e) {
-            System.out.println("Error getting available dates \n" + e.getMessage() + "\n" + e.getCause() + "\n" +
-                    Arrays.toString(e.getStackTrace()));
+        for (int row = 0; row < data.size(); row++) {
+            String date = data.getString(row, "date").split(" ")[0];
+            from.getItems().add(date);
+            to.getItems().add(date);
         }
     }
 
@@ -233,7 +226,7 @@ public class WelcomeController extends AbstractController {
      * The backdrop is then added to the screen as an ImageView.
      */
     private void setWelcomeBackdrop() {
-        welcomeBackdrop.setImage(AssetLoader.WELCOME_BACKGROUND);
+        welcomeBackdrop.setImage(AssetLoader.getImage(AssetLoader.WELCOME_BACKGROUND, 960, 600, false));
         welcomeBackdrop.setFitWidth(960);
         welcomeBackdrop.setFitHeight(600);
         welcomeBackdrop.setPreserveRatio(false);
@@ -247,7 +240,7 @@ public class WelcomeController extends AbstractController {
      * The title is then added to the screen as an ImageView.
      */
     private void setGuiTitle() {
-        guiTitle.setImage(AssetLoader.WELCOME_TITLE);
+        guiTitle.setImage(AssetLoader.getImage(AssetLoader.WELCOME_TITLE, 477, 114, false));
         guiTitle.setFitWidth(477);
         guiTitle.setFitHeight(114);
         guiTitle.setPreserveRatio(false);
@@ -262,7 +255,7 @@ public class WelcomeController extends AbstractController {
      * GUI. This animation translates to a flashing text effect, characteristic of old-style video games.
      */
     private void setGuiSubtitle() {
-        guiSubtitle.setImage(AssetLoader.ENTER_DATE_RANGE);
+        guiSubtitle.setImage(AssetLoader.getImage(AssetLoader.ENTER_DATE_RANGE, 484, 66, false));
         guiSubtitle.setFitWidth(484);
         guiSubtitle.setFitHeight(66);
         super.indefiniteFlash(guiSubtitle);
@@ -275,12 +268,21 @@ public class WelcomeController extends AbstractController {
      * The character is then added to the screen as an ImageView.
      */
     private void setGuiCharacter() {
-        guiCharacter.setImage(AssetLoader.CHARACTER);
+        guiCharacter.setImage(AssetLoader.getImage(AssetLoader.CHARACTER, 340, 424, false));
         guiCharacter.setFitWidth(340);
         guiCharacter.setFitHeight(424);
         guiCharacter.setPreserveRatio(false);
     }
 
+    /**
+     * Method to get the property holding the date range selected by the user.
+     *
+     * @return The date range property, whose value is null while no valid range is selected.
+     */
+    public ReadOnlyObjectProperty<DateRange> dateRangeProperty() {
+        return dateRange.getReadOnlyProperty();
+    }
+
     /**
      * Method to get the start date selected by the user.
      *
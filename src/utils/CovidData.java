@@ -1,46 +1,68 @@
 package utils;
 
-import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
+import utils.sql.queries.QueryResult;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * This class represents one record in the London Covid-19 dataset.
  * This is essentially one row in the data table as a Java object. Each column of the table
  * has a corresponding field.
+ * <p>
+ * A table of records may hold thousands of rows, so each record is kept small. The values are stored as primitive
+ * ints, the date as the number of days since the epoch, and the borough as the ID of its name, which is only stored
+ * once however many records refer to it. A NULL value in the database is stored as 0.
+ * <p>
+ * The JavaFX properties used to display a record in a TableView are only created when a cell first asks for them, and
+ * are then kept for as long as the record is. They are read-only, since the records are never edited.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.14
  */
 
 public class CovidData {
 
-    private final StringProperty dateProperty;
-    private final StringProperty boroughProperty;
-    private final IntegerProperty retailAndRecreationProperty;
-    private final IntegerProperty groceryAndPharmacyProperty;
-    private final IntegerProperty parksProperty;
-    private final IntegerProperty transitStationProperty;
-    private final IntegerProperty workplacesProperty;
-    private final IntegerProperty residentialProperty;
-    private final IntegerProperty newCasesProperty;
-    private final IntegerProperty totalCasesProperty;
-    private final IntegerProperty newDeathsProperty;
-    private final IntegerProperty totalDeathsProperty;
-    private final String date;
-    private final Integer retailAndRecreation;
-    private final Integer groceryAndPharmacy;
-    private final Integer parks;
-    private final Integer transitStations;
-    private final Integer workplaces;
-    private final Integer residential;
-    private final Integer newCases;
-    private final Integer totalCases;
-    private final Integer newDeaths;
-    private final Integer totalDeaths;
-    private String borough;
+    private static final Map<String, Integer> BOROUGH_IDS = new HashMap<>();
+    private static final List<String> BOROUGH_NAMES = new ArrayList<>();
+
+    private static final int DATE = 0;
+    private static final int BOROUGH = 1;
+    private static final int RETAIL_AND_RECREATION = 2;
+    private static final int GROCERY_AND_PHARMACY = 3;
+    private static final int PARKS = 4;
+    private static final int TRANSIT_STATIONS = 5;
+    private static final int WORKPLACES = 6;
+    private static final int RESIDENTIAL = 7;
+    private static final int NEW_CASES = 8;
+    private static final int TOTAL_CASES = 9;
+    private static final int NEW_DEATHS = 10;
+    private static final int TOTAL_DEATHS = 11;
+    private static final int PROPERTY_COUNT = 12;
+
+    private final int epochDay;
+    private final int boroughId;
+    private final int retailAndRecreation;
+    private final int groceryAndPharmacy;
+    private final int parks;
+    private final int transitStations;
+    private final int workplaces;
+    private final int residential;
+    private final int newCases;
+    private final int totalCases;
+    private final int newDeaths;
+    private final int totalDeaths;
+    private Object[] properties;
 
     /**
      * Constructor for the CovidData class.
@@ -58,11 +80,11 @@ public class CovidData {
      * @param newDeaths           The number of new deaths.
      * @param totalDeaths         The total number of deaths.
      */
-    public CovidData(String date, String borough, Integer retailAndRecreation, Integer groceryAndPharmacy, Integer parks,
-                     Integer transitStations, Integer workplaces, Integer residential, Integer newCases, Integer totalCases,
-                     Integer newDeaths, Integer totalDeaths) {
-
-        this.date = date;
+    public CovidData(LocalDate date, String borough, int retailAndRecreation, int groceryAndPharmacy, int parks,
+                     int transitStations, int workplaces, int residential, int newCases, int totalCases,
+                     int newDeaths, int totalDeaths) {
+        this.epochDay = (int) date.toEpochDay();
+        this.boroughId = boroughId(borough);
         this.retailAndRecreation = retailAndRecreation;
         this.groceryAndPharmacy = groceryAndPharmacy;
         this.parks = parks;
@@ -73,188 +95,250 @@ public class CovidData {
         this.totalCases = totalCases;
         this.newDeaths = newDeaths;
         this.totalDeaths = totalDeaths;
+    }
+
+    /**
+     * Create a record for every row of a result with the columns of the covid_london table.
+     *
+     * @param rows the rows of the covid_london table.
+     * @return one record per row, in the same order.
+     */
+    public static List<CovidData> listOf(QueryResult rows) {
+        List<CovidData> records = new ArrayList<>(rows.size());
+        for (int row = 0; row < rows.size(); row++) {
+            records.add(new CovidData(LocalDate.parse(rows.getString(row, "date").substring(0, 10)),
+                    rows.getString(row, "borough"),
+                    rows.getInt(row, "retail_and_recreation"), rows.getInt(row, "grocery_and_pharmacy"),
+                    rows.getInt(row, "parks"), rows.getInt(row, "transit_stations"),
+                    rows.getInt(row, "workplaces"), rows.getInt(row, "residential"),
+                    rows.getInt(row, "new_cases"), rows.getInt(row, "total_cases"),
+                    rows.getInt(row, "new_deaths"), rows.getInt(row, "total_deaths")));
+        }
+        return records;
+    }
+
+    /**
+     * Find the ID of a borough name, assigning it a new one the first time it is seen.
+     */
+    private static synchronized int boroughId(String borough) {
+        Integer id = BOROUGH_IDS.get(borough);
+        if (id == null) {
+            id = BOROUGH_NAMES.size();
+            BOROUGH_IDS.put(borough, id);
+            BOROUGH_NAMES.add(borough);
+        }
+        return id;
+    }
+
+    /**
+     * Find the name of a borough from its ID.
+     */
+    private static synchronized String boroughName(int id) {
+        return BOROUGH_NAMES.get(id);
+    }
 
+    /**
+     * @return The date of the record as a read-only property.
+     */
+    @SuppressWarnings("unchecked")
+    public ReadOnlyObjectProperty<LocalDate> dateProperty() {
+        Object[] cache = properties();
+        if (cache[DATE] == null) {
+            cache[DATE] = new SimpleObjectProperty<>(this, "date", date());
+        }
+        return (ReadOnlyObjectProperty<LocalDate>) cache[DATE];
+    }
 
-        dateProperty = new SimpleStringProperty(date);
-        boroughProperty = new SimpleStringProperty(borough);
-        retailAndRecreationProperty = new SimpleIntegerProperty(retailAndRecreation);
-        groceryAndPharmacyProperty = new SimpleIntegerProperty(groceryAndPharmacy);
-        parksProperty = new SimpleIntegerProperty(parks);
-        transitStationProperty = new SimpleIntegerProperty(transitStations);
-        workplacesProperty = new SimpleIntegerProperty(workplaces);
-        residentialProperty = new SimpleIntegerProperty(residential);
-        newCasesProperty = new SimpleIntegerProperty(newCases);
-        totalCasesProperty = new SimpleIntegerProperty(totalCases);
-        newDeathsProperty = new SimpleIntegerProperty(newDeaths);
-        totalDeathsProperty = new SimpleIntegerProperty(totalDeaths);
+    /**
+     * @return The borough of the record as a read-only property.
+     */
+    public ReadOnlyStringProperty boroughProperty() {
+        Object[] cache = properties();
+        if (cache[BOROUGH] == null) {
+            cache[BOROUGH] = new SimpleStringProperty(this, "borough", borough());
+        }
+        return (ReadOnlyStringProperty) cache[BOROUGH];
+    }
+
+    /**
+     * @return The retail and recreation mobility value as a read-only property.
+     */
+    public ReadOnlyIntegerProperty retailAndRecreationProperty() {
+        return integerProperty(RETAIL_AND_RECREATION, "retailAndRecreation", retailAndRecreation);
     }
 
     /**
-     * @return The date of the record as a StringProperty.
+     * @return The grocery and pharmacy mobility value as a read-only property.
      */
-    public String getDateProperty() {
-        return dateProperty.get();
+    public ReadOnlyIntegerProperty groceryAndPharmacyProperty() {
+        return integerProperty(GROCERY_AND_PHARMACY, "groceryAndPharmacy", groceryAndPharmacy);
     }
 
     /**
-     * @return The borough of the record as a StringProperty.
+     * @return The parks mobility value as a read-only property.
      */
-    public String getBoroughProperty() {
-        return boroughProperty.get();
+    public ReadOnlyIntegerProperty parksProperty() {
+        return integerProperty(PARKS, "parks", parks);
     }
 
     /**
-     * @return The retail and recreation mobility value as an IntegerProperty.
+     * @return The transit stations mobility value as a read-only property.
      */
-    public Integer getRetailAndRecreationProperty() {
-        return retailAndRecreationProperty.get();
+    public ReadOnlyIntegerProperty transitStationsProperty() {
+        return integerProperty(TRANSIT_STATIONS, "transitStations", transitStations);
     }
 
     /**
-     * @return The grocery and pharmacy mobility value as an IntegerProperty.
+     * @return The workplaces mobility value as a read-only property.
      */
-    public Integer getGroceryAndPharmacyProperty() {
-        return groceryAndPharmacyProperty.get();
+    public ReadOnlyIntegerProperty workplacesProperty() {
+        return integerProperty(WORKPLACES, "workplaces", workplaces);
     }
 
     /**
-     * @return The parks mobility value as an IntegerProperty.
+     * @return The residential mobility value as a read-only property.
      */
-    public Integer getParksProperty() {
-        return parksProperty.get();
+    public ReadOnlyIntegerProperty residentialProperty() {
+        return integerProperty(RESIDENTIAL, "residential", residential);
     }
 
     /**
-     * @return The transit stations mobility value as an IntegerProperty.
+     * @return The number of new cases as a read-only property.
      */
-    public Integer getTransitStationProperty() {
-        return transitStationProperty.get();
+    public ReadOnlyIntegerProperty newCasesProperty() {
+        return integerProperty(NEW_CASES, "newCases", newCases);
     }
 
     /**
-     * @return The workplaces mobility value as an IntegerProperty.
+     * @return The total number of cases as a read-only property.
      */
-    public Integer getWorkplacesProperty() {
-        return workplacesProperty.get();
+    public ReadOnlyIntegerProperty totalCasesProperty() {
+        return integerProperty(TOTAL_CASES, "totalCases", totalCases);
     }
 
     /**
-     * @return The residential mobility value as an IntegerProperty.
+     * @return The number of new deaths as a read-only property.
      */
-    public Integer getResidentialProperty() {
-        return residentialProperty.get();
+    public ReadOnlyIntegerProperty newDeathsProperty() {
+        return integerProperty(NEW_DEATHS, "newDeaths", newDeaths);
     }
 
     /**
-     * @return The number of new cases as an IntegerProperty.
+     * @return The total number of deaths as a read-only property.
      */
-    public Integer getNewCasesProperty() {
-        return newCasesProperty.get();
+    public ReadOnlyIntegerProperty totalDeathsProperty() {
+        return integerProperty(TOTAL_DEATHS, "totalDeaths", totalDeaths);
     }
 
     /**
-     * @return The total number of cases as an IntegerProperty.
+     * Get the array holding the properties created so far, creating it on first use.
      */
-    public Integer getTotalCasesProperty() {
-        return totalCasesProperty.get();
+    private Object[] properties() {
+        if (properties == null) {
+            properties = new Object[PROPERTY_COUNT];
+        }
+        return properties;
     }
 
     /**
-     * @return The number of new deaths as an IntegerProperty.
+     * Get the property of an integer value, creating it on first use.
      */
-    public Integer getNewDeathsProperty() {
-        return newDeathsProperty.get();
+    private ReadOnlyIntegerProperty integerProperty(int index, String name, int value) {
+        Object[] cache = properties();
+        if (cache[index] == null) {
+            cache[index] = new SimpleIntegerProperty(this, name, value);
+        }
+        return (ReadOnlyIntegerProperty) cache[index];
     }
 
     /**
-     * @return The total number of deaths as an IntegerProperty.
+     * @return The date of the record.
      */
-    public Integer getTotalDeathsProperty() {
-        return totalDeathsProperty.get();
+    public LocalDate date() {
+        return LocalDate.ofEpochDay(epochDay);
     }
 
     /**
-     * @return The date of the record as a String.
+     * @return The date of the record, as the number of days since the epoch.
      */
-    public String date() {
-        return date;
+    public int epochDay() {
+        return epochDay;
     }
 
     /**
      * @return The borough of the record as a String.
      */
     public String borough() {
-        return borough;
+        return boroughName(boroughId);
     }
 
     /**
-     * @return The retail and recreation mobility value as an Integer.
+     * @return The retail and recreation mobility value.
      */
-    public Integer retailAndRecreation() {
+    public int retailAndRecreation() {
         return retailAndRecreation;
     }
 
     /**
-     * @return The grocery and pharmacy mobility value as an Integer.
+     * @return The grocery and pharmacy mobility value.
      */
-    public Integer groceryAndPharmacy() {
+    public int groceryAndPharmacy() {
         return groceryAndPharmacy;
     }
 
     /**
-     * @return The parks mobility value as an Integer.
+     * @return The parks mobility value.
      */
-    public Integer parks() {
+    public int parks() {
         return parks;
     }
 
     /**
-     * @return The transit stations mobility value as an Integer.
+     * @return The transit stations mobility value.
      */
-    public Integer transitStations() {
+    public int transitStations() {
         return transitStations;
     }
 
     /**
-     * @return The workplaces mobility value as an Integer.
+     * @return The workplaces mobility value.
      */
-    public Integer workplaces() {
+    public int workplaces() {
         return workplaces;
     }
 
     /**
-     * @return The residential mobility value as an Integer.
+     * @return The residential mobility value.
      */
-    public Integer residential() {
+    public int residential() {
         return residential;
     }
 
     /**
-     * @return The number of new cases as an Integer.
+     * @return The number of new cases.
      */
-    public Integer newCases() {
+    public int newCases() {
         return newCases;
     }
 
     /**
-     * @return The total number of cases as an Integer.
+     * @return The total number of cases.
      */
-    public Integer totalCases() {
+    public int totalCases() {
         return totalCases;
     }
 
     /**
-     * @return The number of new deaths as an Integer.
+     * @return The number of new deaths.
      */
-    public Integer newDeaths() {
+    public int newDeaths() {
         return newDeaths;
     }
 
     /**
-     * @return The total number of deaths as an Integer.
+     * @return The total number of deaths.
      */
-    public Integer totalDeaths() {
+    public int totalDeaths() {
         return totalDeaths;
     }
 }
-
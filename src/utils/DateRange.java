@@ -0,0 +1,66 @@
+package utils;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * This class represents a range of dates selected by the user, from a start date to an end date, both inclusive.
+ * Two ranges are equal if they have the same start and end dates.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.08
+ */
+public class DateRange {
+
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    /**
+     * Constructor for the DateRange class.
+     *
+     * @param startDate the first date in the range.
+     * @param endDate   the last date in the range, which must not be before the start date.
+     */
+    public DateRange(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("The end date " + endDate + " is before the start date " + startDate);
+        }
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * @return the first date in the range.
+     */
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * @return the last date in the range.
+     */
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DateRange other)) {
+            return false;
+        }
+        return startDate.equals(other.startDate) && endDate.equals(other.endDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startDate, endDate);
+    }
+
+    @Override
+    public String toString() {
+        return startDate + " to " + endDate;
+    }
+}
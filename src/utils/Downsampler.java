@@ -0,0 +1,91 @@
+package utils;
+
+/**
+ * Class to reduce a series of values to fewer points while keeping its visible shape.
+ * <p>
+ * It uses the Largest-Triangle-Three-Buckets algorithm. The first and last points are always kept. The points between
+ * them are split into equal buckets, one per point to keep, and from each bucket the point forming the largest triangle
+ * with the point kept from the previous bucket and the average of the next bucket is kept. Peaks and troughs form large
+ * triangles, so they survive, unlike with averaging or picking every nth point.
+ * <p>
+ * The positions of the points are used to measure the triangles, so points that are not evenly spaced, such as the
+ * starts of months, are weighed correctly.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.18
+ */
+public class Downsampler {
+
+    /**
+     * Constructor for the Downsampler class. It only has static methods, so it is never created.
+     */
+    private Downsampler() {
+    }
+
+    /**
+     * Choose the points of part of a series to keep.
+     *
+     * @param positions the positions of the points of the series, in increasing order.
+     * @param values    the values of the series.
+     * @param from      the index of the first point to consider, inclusive.
+     * @param to        the index of the last point to consider, exclusive.
+     * @param threshold the largest number of points to keep. Every point is kept if there are no more than this many,
+     *                  or if it is less than 3.
+     * @return the indexes of the points kept, in increasing order.
+     */
+    public static int[] largestTriangleThreeBuckets(double[] positions, double[] values, int from, int to,
+                                                    int threshold) {
+        int length = to - from;
+        if (threshold >= length || threshold < 3) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = from + i;
+            }
+            return all;
+        }
+
+        int[] kept = new int[threshold];
+        kept[0] = from;
+        // Every bucket but the first and last, which hold the first and last points, spans this many points.
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int previous = from;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int bucketStart = from + 1 + (int) (bucket * bucketSize);
+            int bucketEnd = from + 1 + (int) ((bucket + 1) * bucketSize);
+
+            // The next bucket is represented by its average point; the last bucket is just the last point.
+            int nextStart = bucketEnd;
+            int nextEnd = Math.min(from + 1 + (int) ((bucket + 2) * bucketSize), to);
+            if (bucket == threshold - 3) {
+                nextStart = to - 1;
+                nextEnd = to;
+            }
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += positions[i];
+                averageY += values[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            double largestArea = -1;
+            int chosen = bucketStart;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                // Twice the area of the triangle, which is enough to compare them.
+                double area = Math.abs((positions[previous] - averageX) * (values[i] - values[previous])
+                        - (positions[previous] - positions[i]) * (averageY - values[previous]));
+                if (area > largestArea) {
+                    largestArea = area;
+                    chosen = i;
+                }
+            }
+            kept[bucket + 1] = chosen;
+            previous = chosen;
+        }
+
+        kept[threshold - 1] = to - 1;
+        return kept;
+    }
+}
@@ -0,0 +1,124 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Class to simplify outlines by removing the points that barely change their shape.
+ * <p>
+ * It uses the Douglas-Peucker algorithm. Starting from the line between the first and last points of the outline, the
+ * point furthest from that line is kept if it is further than the tolerance, and the two halves either side of it are
+ * simplified in the same way. Points within the tolerance of the line are dropped, so the simplified outline is never
+ * further than the tolerance from the original one, and every point it keeps is one of the original points.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.22
+ */
+public class Simplifier {
+
+    /**
+     * Constructor for the Simplifier class. It only has static methods, so it is never created.
+     */
+    private Simplifier() {
+    }
+
+    /**
+     * Simplify an outline.
+     *
+     * @param outline   the outline, as alternating x and y coordinates.
+     * @param tolerance the largest distance any dropped point may be from the simplified outline. An outline is
+     *                  returned unchanged if the tolerance is not positive.
+     * @return the simplified outline, as alternating x and y coordinates, with at least three points if the outline
+     * had that many.
+     */
+    public static float[] douglasPeucker(float[] outline, double tolerance) {
+        int points = outline.length / 2;
+        if (tolerance <= 0 || points <= 3) {
+            return outline;
+        }
+
+        boolean[] kept = new boolean[points];
+        kept[0] = true;
+        kept[points - 1] = true;
+        double squaredTolerance = tolerance * tolerance;
+
+        // Each pair on the stack is a stretch of the outline whose end points are kept but whose middle is not decided.
+        Deque<int[]> stretches = new ArrayDeque<>();
+        stretches.push(new int[]{0, points - 1});
+        while (!stretches.isEmpty()) {
+            int[] stretch = stretches.pop();
+            int first = stretch[0];
+            int last = stretch[1];
+            double furthestDistance = -1;
+            int furthest = -1;
+            for (int point = first + 1; point < last; point++) {
+                double distance = squaredDistance(outline, point, first, last);
+                if (distance > furthestDistance) {
+                    furthestDistance = distance;
+                    furthest = point;
+                }
+            }
+            if (furthest >= 0 && furthestDistance > squaredTolerance) {
+                kept[furthest] = true;
+                stretches.push(new int[]{first, furthest});
+                stretches.push(new int[]{furthest, last});
+            }
+        }
+
+        int count = 0;
+        for (boolean point : kept) {
+            if (point) {
+                count++;
+            }
+        }
+        if (count < 3) {
+            // An outline needs three points to enclose an area, so the point furthest from the others is kept too.
+            kept[furthestFromEnds(outline, points)] = true;
+            count++;
+        }
+
+        float[] simplified = new float[count * 2];
+        int next = 0;
+        for (int point = 0; point < points; point++) {
+            if (kept[point]) {
+                simplified[next++] = outline[2 * point];
+                simplified[next++] = outline[2 * point + 1];
+            }
+        }
+        return next == simplified.length ? simplified : Arrays.copyOf(simplified, next);
+    }
+
+    /**
+     * Find the point, other than the first and last, furthest from the line between the first and last points.
+     */
+    private static int furthestFromEnds(float[] outline, int points) {
+        int furthest = 1;
+        double furthestDistance = -1;
+        for (int point = 1; point < points - 1; point++) {
+            double distance = squaredDistance(outline, point, 0, points - 1);
+            if (distance > furthestDistance) {
+                furthestDistance = distance;
+                furthest = point;
+            }
+        }
+        return furthest;
+    }
+
+    /**
+     * Find the squared distance from a point to the segment between two others.
+     */
+    private static double squaredDistance(float[] outline, int point, int first, int last) {
+        double x = outline[2 * point];
+        double y = outline[2 * point + 1];
+        double x1 = outline[2 * first];
+        double y1 = outline[2 * first + 1];
+        double dx = outline[2 * last] - x1;
+        double dy = outline[2 * last + 1] - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+        double px = x1 + t * dx - x;
+        double py = y1 + t * dy - y;
+        return px * px + py * py;
+    }
+}
@@ -0,0 +1,460 @@
+package utils.sql.connector;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of database connections.
+ * <p>
+ * Opening a connection to the database requires a full TCP, TLS and authentication handshake, which is far more
+ * expensive than the queries this application runs. This pool keeps physical connections open and hands them out to
+ * callers as lightweight wrappers. Calling close() on a wrapper returns the physical connection to the pool instead of
+ * closing it.
+ * <p>
+ * The pool warms itself up to a minimum number of idle connections in the background, evicts connections that have
+ * been idle or alive for too long, validates idle connections before handing them out, and gives up on borrowing a
+ * connection if none becomes available within the acquisition timeout.
+ * <p>
+ * Each physical connection also keeps a small cache of the prepared statements created on it, keyed by their SQL.
+ * Preparing the same SQL again on a borrowed connection reuses the cached statement, and closing that statement
+ * returns it to the cache with its parameters cleared. Together with server-side prepared statements, this means a
+ * query that is run repeatedly with different parameters is only parsed and planned by the database once per
+ * connection.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.10
+ */
+public class ConnectionPool {
+
+    /**
+     * Connections used more recently than this are trusted without being validated again.
+     */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 30_000;
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private final Callable<Connection> connectionFactory;
+    private final int maxSize;
+    private final int minIdle;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final int validationTimeoutSeconds;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections;
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Constructor for the ConnectionPool class.
+     * <p>
+     * The pool starts warming up to its minimum number of idle connections in the background immediately.
+     *
+     * @param connectionFactory        the source of new physical connections.
+     * @param maxSize                  the maximum number of connections open at any time.
+     * @param minIdle                  the number of idle connections the pool tries to keep open.
+     * @param acquireTimeoutMillis     how long to wait for a free connection before giving up.
+     * @param idleTimeoutMillis        how long a connection may stay idle before it is closed.
+     * @param maxLifetimeMillis        how long a connection may stay open in total before it is closed.
+     * @param validationTimeoutSeconds how long to wait for the database to confirm a connection is still alive.
+     */
+    public ConnectionPool(Callable<Connection> connectionFactory, int maxSize, int minIdle, long acquireTimeoutMillis,
+                          long idleTimeoutMillis, long maxLifetimeMillis, int validationTimeoutSeconds) {
+        this.connectionFactory = connectionFactory;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.idleConnections = new LinkedBlockingDeque<>();
+        this.permits = new Semaphore(maxSize, true);
+        this.totalConnections = new AtomicInteger();
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.execute(this::fillIdleConnections);
+        housekeeper.scheduleWithFixedDelay(this::evictConnections, HOUSEKEEPING_PERIOD_MILLIS,
+                HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool.
+     * <p>
+     * Idle connections are reused whenever possible; a new physical connection is only opened when there are none.
+     * The returned connection must be closed by the caller, which returns it to the pool.
+     *
+     * @return a connection to the database.
+     * @throws SQLException if the pool is closed, no connection became available within the acquisition timeout, or
+     *                      a new connection could not be opened.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool has been shut down.");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a database connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.lend();
+                }
+                closePhysical(pooled);
+            }
+            return openPhysical().lend();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close every connection in the pool and stop the background housekeeping.
+     * <p>
+     * Connections currently lent out are closed when they are returned.
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            closePhysical(pooled);
+        }
+    }
+
+    /**
+     * @return the number of physical connections currently open, whether idle or lent out.
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * @return the number of physical connections currently idle in the pool.
+     */
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Check whether an idle connection can be handed out again.
+     * Connections past their maximum lifetime are rejected, and connections that have not been used very recently are
+     * validated against the database.
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        long now = System.currentTimeMillis();
+        if (now - pooled.createdAt >= maxLifetimeMillis) {
+            return false;
+        }
+        if (now - pooled.lastReturnedAt < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Open a new physical connection using the connection factory.
+     */
+    private PooledConnection openPhysical() throws SQLException {
+        Connection connection;
+        try {
+            connection = connectionFactory.call();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Could not open a database connection.", e);
+        }
+        if (connection == null) {
+            throw new SQLException("Could not open a database connection.");
+        }
+        totalConnections.incrementAndGet();
+        return new PooledConnection(connection);
+    }
+
+    /**
+     * Close a physical connection, ignoring any errors since the connection is being discarded anyway.
+     */
+    private void closePhysical(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Return a lent out connection to the pool, or close it if it can no longer be reused.
+     */
+    private void giveBack(PooledConnection pooled) {
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                closePhysical(pooled);
+                return;
+            }
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            idleConnections.offerFirst(pooled);
+        } catch (SQLException e) {
+            closePhysical(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close idle connections that have expired, then top the pool back up to its minimum number of idle connections.
+     * <p>
+     * Runs periodically on the housekeeping thread.
+     */
+    private void evictConnections() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> expired = new ArrayList<>();
+        Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+        int idle = idleConnections.size();
+
+        while (iterator.hasNext()) {
+            PooledConnection pooled = iterator.next();
+            boolean pastLifetime = now - pooled.createdAt >= maxLifetimeMillis;
+            boolean pastIdleTimeout = now - pooled.lastReturnedAt >= idleTimeoutMillis && idle > minIdle;
+            if ((pastLifetime || pastIdleTimeout) && idleConnections.removeFirstOccurrence(pooled)) {
+                expired.add(pooled);
+                idle--;
+            }
+        }
+        expired.forEach(this::closePhysical);
+
+        fillIdleConnections();
+    }
+
+    /**
+     * Open connections in the background until the pool holds its minimum number of idle connections.
+     */
+    private void fillIdleConnections() {
+        while (!closed && idleConnections.size() < minIdle && totalConnections.get() < maxSize) {
+            if (!permits.tryAcquire()) {
+                return;
+            }
+            try {
+                PooledConnection pooled = openPhysical();
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idleConnections.offerLast(pooled);
+            } catch (SQLException e) {
+                System.out.println("Error warming up the connection pool: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool, together with the bookkeeping needed to expire it and its cache of
+     * prepared statements.
+     */
+    private class PooledConnection {
+
+        private final Connection physical;
+        private final long createdAt;
+        private final Map<String, CachedStatement> statementCache;
+        private volatile long lastReturnedAt;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.createdAt = System.currentTimeMillis();
+            this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= STATEMENT_CACHE_SIZE) {
+                        return false;
+                    }
+                    eldest.getValue().evict();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Wrap the physical connection so that closing it returns it to the pool.
+         * Each loan gets its own wrapper, so a caller closing twice, or using a connection after closing it, cannot
+         * affect whoever borrows the connection next.
+         */
+        private Connection lend() {
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean returned;
+
+                @Override
+                public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!returned) {
+                                returned = true;
+                                giveBack(PooledConnection.this);
+                            }
+                            return null;
+                        case "isClosed":
+                            return returned || physical.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Pooled" + physical;
+                        default:
+                            if (returned) {
+                                throw new SQLException("Connection has already been returned to the pool.");
+                            }
+                    }
+                    if (method.getName().equals("prepareStatement") && args.length == 1) {
+                        return prepareCached((String) args[0], (Connection) proxy);
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, handler);
+        }
+
+        /**
+         * Find a free cached statement for the given SQL, or prepare and cache a new one.
+         * If the cached statement is already in use by the current borrower, an uncached statement is returned instead.
+         */
+        private PreparedStatement prepareCached(String sql, Connection owner) throws SQLException {
+            CachedStatement cached = statementCache.get(sql);
+            if (cached != null && cached.inUse) {
+                return physical.prepareStatement(sql);
+            }
+            if (cached == null || cached.physical.isClosed()) {
+                cached = new CachedStatement(physical.prepareStatement(sql));
+                statementCache.put(sql, cached);
+            }
+            return cached.lend(owner);
+        }
+    }
+
+    /**
+     * A prepared statement kept open in a connection's statement cache.
+     */
+    private static class CachedStatement {
+
+        private final PreparedStatement physical;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Wrap the physical statement so that closing it returns it to the cache instead of closing it.
+         */
+        private PreparedStatement lend(Connection owner) {
+            inUse = true;
+            InvocationHandler handler = new InvocationHandler() {
+                // A statement may be cancelled from another thread, which must see that it has been returned.
+                private volatile boolean returned;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!returned) {
+                                returned = true;
+                                giveBack();
+                            }
+                            return null;
+                        case "isClosed":
+                            return returned || physical.isClosed();
+                        case "getConnection":
+                            return owner;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Cached" + physical;
+                        default:
+                            if (returned) {
+                                throw new SQLException("Statement has already been closed.");
+                            }
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        /**
+         * Clear the parameters of a statement that has been closed by its borrower, so it can be reused.
+         * The statement is closed instead if it was evicted from the cache while it was in use.
+         */
+        private void giveBack() {
+            inUse = false;
+            try {
+                if (evicted) {
+                    physical.close();
+                    return;
+                }
+                physical.clearParameters();
+            } catch (SQLException e) {
+                evict();
+            }
+        }
+
+        /**
+         * Close the statement once it is no longer in use, since it has been removed from the cache.
+         */
+        private void evict() {
+            evicted = true;
+            if (inUse) {
+                return;
+            }
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing cached statement: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -2,34 +2,69 @@ package utils.sql.connector;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 
 /**
  * This class is responsible for connecting to the database.
- * It uses the DriverManager class to get a connection to the database.
- * The connect method returns a Connection object, which can be used to execute queries.
+ * It keeps a ConnectionPool of open connections to the database, so that queries do not need to pay for a new
+ * connection handshake every time they are run.
+ * The connect method returns a Connection object, which can be used to execute queries. Closing that connection
+ * returns it to the pool.
  * The connect method is public and static so it can be called without creating an instance of the class anywhere in
  * this application.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.12
  */
 public class DatabaseConnector {
 
     /**
-     * This method connects to the database using the DriverManager class.
-     * It returns a Connection object, which can be used to execute queries.
+     * Statements are prepared on the server, so that the connection pool's statement cache lets the database reuse
+     * their parsed and planned form.
+     * Several statements separated by semicolons may also be sent together, so that a QueryBatch costs a single round
+     * trip. The driver prepares such statements on the client, binding their parameters there.
+     * Statements given a fetch size read their rows through a server-side cursor, that many rows at a time, instead of
+     * all at once; statements without one are unaffected.
+     */
+    private static final String URL =
+            "jdbc:mysql:aws://ppa-coursework-4.cn2gi2oeogwn.eu-west-1.rds.amazonaws.com:3306/covid_london_db" +
+                    "?useServerPrepStmts=true&allowMultiQueries=true&useCursorFetch=true";
+    private static final String USER = "admin";
+    private static final String PASSWORD = "enzobestetti";
+
+    private static final ConnectionPool POOL = new ConnectionPool(DatabaseConnector::openConnection,
+            8, 2, 10_000, 5 * 60_000, 30 * 60_000, 2);
+
+    /**
+     * This method borrows a connection to the database from the connection pool.
+     * It returns a Connection object, which can be used to execute queries. The connection must be closed once it is
+     * no longer needed, which returns it to the pool.
      *
-     * @return Connection object
+     * @return Connection object, or null if no connection could be obtained.
      */
     public static Connection connect() {
         Connection conn = null;
         try {
-            conn = DriverManager.getConnection(
-                    "jdbc:mysql:aws://ppa-coursework-4.cn2gi2oeogwn.eu-west-1.rds.amazonaws.com:3306/covid_london_db",
-                    "admin", "enzobestetti");
-        } catch (Exception e) {
+            conn = POOL.borrow();
+        } catch (SQLException e) {
             System.out.println("Error: " + e.getMessage() + "\n Could not connect to the database.");
         }
         return conn;
     }
+
+    /**
+     * This method closes every connection held by the connection pool.
+     * It should be called when the application exits.
+     */
+    public static void shutdown() {
+        POOL.shutdown();
+    }
+
+    /**
+     * This method opens a new physical connection to the database using the DriverManager class.
+     * It is used by the connection pool whenever it needs a new connection.
+     */
+    private static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(URL, USER, PASSWORD);
+    }
 }
@@ -1,60 +1,296 @@
 package utils.sql.queries;
 
 import utils.sql.connector.DatabaseConnector;
+import utils.store.CovidStore;
+import utils.store.CovidTable;
 
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * This class is responsible for creating a Query object that can be used to execute a SQL query on a database.
  * <p>
  * The methods in this class can be used by an ExecutorService to submit the query represented by this object
- * to a separate thread for execution. For such, a connection with the database is established here and
- * a prepared statement is created using the query string passed at construction.
+ * to a separate thread for execution. For such, a connection with the database is borrowed from the connection pool
+ * and a prepared statement is created using the query string passed at construction.
  * <p>
- * The connection is closed after the query is executed and its result set processed as required.
+ * Values that change between runs of the query, such as dates and borough names, should not be written into the
+ * query string. They should be marked with a '?' placeholder and passed as parameters instead. The query string then
+ * stays the same between runs, so the prepared statement cached by the connection pool, and the plan the database made
+ * for it, can be reused.
+ * <p>
+ * Every row of the result is read into a QueryResult before the statement is closed and the connection is returned to
+ * the pool, so the caller never holds on to database resources.
+ * <p>
+ * A query can be given a timeout, after which the database abandons it, and can be cancelled from another thread
+ * while it runs. A cancelled query fails with an SQLException.
+ * <p>
+ * A query on the covid_london table can also be given a local plan, which computes the same result from the in-memory
+ * copy of the table. The copy is loaded a few boroughs at a time, and the local plan returns null while the part loaded
+ * so far cannot answer the query. Whenever the local plan returns a result, it is used instead of going to the
+ * database.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.07
+ * @version 2024.04.25
  */
 public class Query {
 
     private final String queryString;
-    private Connection conn;
+    private final Object[] parameters;
+    private Function<CovidTable, QueryResult> localPlan;
+    private int timeoutSeconds;
+    private Statement activeStatement;
+    private boolean cancelled;
 
     /**
-     * Construct a Query object with a query string.
+     * Construct a Query object with a query string and the values of its parameters.
      *
-     * @param queryString the SQL query to be executed in the database.
+     * @param queryString the SQL query to be executed in the database, with a '?' in place of each parameter.
+     * @param parameters  the values of the parameters, in the order in which they appear in the query string.
      */
-    public Query(String queryString) {
+    public Query(String queryString, Object... parameters) {
         this.queryString = queryString;
+        this.parameters = parameters.clone();
     }
 
     /**
-     * Create a PreparedStatement object using the query string passed at construction.
+     * Give the query a local plan that answers it from the in-memory copy of the covid_london table.
+     * The plan must return the same columns and rows as the SQL query would, or null if the copy it is given does not
+     * hold all the rows the query needs.
      *
-     * @return a PreparedStatement object that can be used to execute the query in the database.
+     * @param localPlan the function computing the result of the query from the table.
+     * @return this query.
+     */
+    public Query withLocalPlan(Function<CovidTable, QueryResult> localPlan) {
+        this.localPlan = localPlan;
+        return this;
+    }
+
+    /**
+     * Give the query a timeout. If the database has not finished running the query by then, the query fails.
+     *
+     * @param timeoutSeconds the number of seconds the query may run for, or 0 for no limit.
+     * @return this query.
+     */
+    public Query withTimeout(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+        return this;
+    }
+
+    /**
+     * @return the number of seconds the query may run for, or 0 if it has no limit.
      */
-    public PreparedStatement getStatement() {
-        openConnection();
-        System.out.println("Connecting to the database...");
+    public int getTimeout() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * Cancel the query. If it is running on the database, the database is asked to stop it, and if it has not started
+     * yet, it will fail as soon as it does. Queries answered from memory are not affected.
+     * <p>
+     * Asking the database to stop a query takes a round trip, so this method should not be called on the JavaFX
+     * Application Thread. The round trip is made without holding the lock of the query, so the worker running it is
+     * never held up in starting or finishing its statement while the database answers.
+     */
+    public void cancel() {
+        Statement statement;
+        synchronized (this) {
+            cancelled = true;
+            statement = activeStatement;
+        }
+        if (statement == null) {
+            return;
+        }
         try {
-            return conn.prepareStatement(queryString);
+            statement.cancel();
         } catch (SQLException e) {
-            System.out.println("Error creating prepared statement: " + e.getMessage() + "\n" + e.getStackTrace() + "\n" + e.getCause());
+            System.out.println("Error cancelling query: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the query has been cancelled.
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Execute the query and read its result fully into memory.
+     * <p>
+     * If the query has a local plan and the part of the covid_london table loaded into memory can answer it, the
+     * result is computed from the table without going to the database. Otherwise, the rest of the table starts loading
+     * in the background so that later queries can use it.
+     * <p>
+     * This method blocks until every row has been read, so it must not be called on the JavaFX Application Thread.
+     *
+     * @return the rows returned by the query.
+     * @throws SQLException if no connection could be obtained, or the query failed.
+     */
+    public QueryResult execute() throws SQLException {
+        QueryResult result = executeLocally();
+        if (result != null) {
+            return result;
+        }
+        return executeRemotely();
+    }
+
+    /**
+     * Execute the query and hand its result over in batches, as the rows are read.
+     * <p>
+     * The rows are fetched from the database batchSize at a time, rather than all at once, so the first batch can be
+     * used before the last row has arrived. A query answered from memory hands over its whole result as one batch.
+     * Like execute, this method blocks until every row has been read, so it must not be called on the JavaFX
+     * Application Thread.
+     *
+     * @param batchSize the number of rows to fetch and hand over at a time.
+     * @param onBatch   the consumer of each batch of rows, called on the calling thread.
+     * @throws SQLException if no connection could be obtained, or the query failed or was cancelled.
+     */
+    public void executeInBatches(int batchSize, Consumer<QueryResult> onBatch) throws SQLException {
+        QueryResult result = executeLocally();
+        if (result != null) {
+            onBatch.accept(result);
+            return;
+        }
+
+        Connection conn = DatabaseConnector.connect();
+        if (conn == null) {
+            throw new SQLException("Could not connect to the database.");
+        }
+        try (conn; PreparedStatement statement = conn.prepareStatement(queryString)) {
+            statement.setQueryTimeout(timeoutSeconds);
+            statement.setFetchSize(batchSize);
+            bindParameters(statement, 0);
+            setActiveStatement(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                QueryResult batch;
+                do {
+                    batch = QueryResult.from(resultSet, batchSize);
+                    if (!batch.isEmpty()) {
+                        onBatch.accept(batch);
+                    }
+                } while (batch.size() == batchSize);
+            } finally {
+                setActiveStatement(null);
+                // The statement is cached by the connection pool, so later queries must not inherit the fetch size.
+                statement.setFetchSize(0);
+            }
+        }
+    }
+
+    /**
+     * Compute the result of the query from the in-memory copy of the covid_london table, if the query has a local plan
+     * and the part of the table loaded so far can answer it. If it cannot, the rest of the table starts loading in the
+     * background.
+     *
+     * @return the result of the local plan, or null if the query must be run on the database.
+     */
+    QueryResult executeLocally() {
+        if (localPlan == null) {
             return null;
         }
+        CovidStore store = CovidStore.getInstance();
+        CovidTable table = store.getTable();
+        if (table != null) {
+            QueryResult result = localPlan.apply(table);
+            if (result != null) {
+                return result;
+            }
+        }
+        store.loadInBackground();
+        return null;
     }
 
     /**
-     * Open a connection to the database using a DatabaseConnector object.
+     * Run the query on the database and read its result fully into memory.
+     *
+     * @return the rows returned by the query.
+     * @throws SQLException if no connection could be obtained, or the query failed.
      */
-    private void openConnection() {
-        conn = DatabaseConnector.connect();
+    QueryResult executeRemotely() throws SQLException {
+        Connection conn = DatabaseConnector.connect();
+        if (conn == null) {
+            throw new SQLException("Could not connect to the database.");
+        }
+        try (conn; PreparedStatement statement = conn.prepareStatement(queryString)) {
+            statement.setQueryTimeout(timeoutSeconds);
+            bindParameters(statement, 0);
+            setActiveStatement(statement);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return QueryResult.from(resultSet);
+            } finally {
+                setActiveStatement(null);
+            }
+        }
     }
-}
 
+    /**
+     * Record the statement the query is running on, so that cancel can stop it. The statement is cleared before it is
+     * closed, so a statement that has been returned to the connection pool is never cancelled. A QueryBatch records
+     * the statement it sends every query in the batch on.
+     *
+     * @throws SQLException if the query was cancelled before it started.
+     */
+    synchronized void setActiveStatement(Statement statement) throws SQLException {
+        if (statement != null && cancelled) {
+            throw new SQLException("The query was cancelled.");
+        }
+        activeStatement = statement;
+    }
 
+    /**
+     * @return the SQL query to be executed in the database.
+     */
+    public String getQueryString() {
+        return queryString;
+    }
 
+    /**
+     * @return the SQL query with runs of whitespace collapsed to single spaces and any trailing semicolon removed, so
+     * that two query strings differing only in layout compare equal.
+     */
+    public String getNormalisedQueryString() {
+        String normalised = queryString.trim().replaceAll("\\s+", " ");
+        while (normalised.endsWith(";")) {
+            normalised = normalised.substring(0, normalised.length() - 1).trim();
+        }
+        return normalised;
+    }
+
+    /**
+     * @return the values of the parameters of the query, in order.
+     */
+    public List<Object> getParameters() {
+        return Arrays.asList(parameters.clone());
+    }
+
+    /**
+     * Set the values of the parameters on a prepared statement, starting after the given number of placeholders.
+     * LocalDate values are converted to SQL dates, since not every driver accepts them directly.
+     *
+     * @param statement the statement to set the parameters on.
+     * @param offset    the number of placeholders in the statement that come before this query's.
+     * @return the number of placeholders set.
+     * @throws SQLException if a parameter cannot be set.
+     */
+    int bindParameters(PreparedStatement statement, int offset) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] instanceof LocalDate date) {
+                statement.setDate(offset + i + 1, Date.valueOf(date));
+                continue;
+            }
+            statement.setObject(offset + i + 1, parameters[i]);
+        }
+        return parameters.length;
+    }
+}
@@ -0,0 +1,183 @@
+package utils.sql.queries;
+
+import utils.sql.connector.DatabaseConnector;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * This class groups several queries so that they can be sent to the database together.
+ * <p>
+ * A scene usually needs the results of more than one query before it can be drawn. Running them one after the other
+ * pays the round trip to the database once per query. A QueryBatch joins the queries into a single multi-statement
+ * request, sent over one connection, and reads back one result set per query. All the data a scene depends on then
+ * costs a single round trip.
+ * <p>
+ * Queries that can be answered from the in-memory copy of the covid_london table are answered locally and are left out
+ * of the request. If only one query has to go to the database, it is run on its own.
+ * <p>
+ * The results are returned in the order in which the queries were added. Like a single Query, the batch blocks until
+ * every row has been read, so it must not be executed on the JavaFX Application Thread.
+ * <p>
+ * The request is given the longest timeout of the queries in it, so no query is cut short before its own limit, and
+ * it has no limit if any of them has none. Cancelling any query in the batch, or the batch itself, stops the whole
+ * request.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.25
+ */
+public class QueryBatch {
+
+    private final List<Query> queries;
+
+    /**
+     * Constructor for the QueryBatch class.
+     *
+     * @param queries the queries to start the batch with.
+     */
+    public QueryBatch(Query... queries) {
+        this.queries = new ArrayList<>(List.of(queries));
+    }
+
+    /**
+     * Add a query to the batch.
+     *
+     * @param query the query to add.
+     * @return this batch.
+     */
+    public QueryBatch add(Query query) {
+        queries.add(query);
+        return this;
+    }
+
+    /**
+     * @return the queries in the batch, in the order in which they were added.
+     */
+    public List<Query> getQueries() {
+        return Collections.unmodifiableList(queries);
+    }
+
+    /**
+     * @return the number of queries in the batch.
+     */
+    public int size() {
+        return queries.size();
+    }
+
+    /**
+     * Cancel every query in the batch. If the batch is running on the database, the database is asked to stop it, and
+     * if it has not started yet, it will fail as soon as it does.
+     * <p>
+     * Asking the database to stop a query takes a round trip, so this method should not be called on the JavaFX
+     * Application Thread.
+     */
+    public void cancel() {
+        for (Query query : queries) {
+            query.cancel();
+        }
+    }
+
+    /**
+     * Execute every query in the batch and read their results fully into memory.
+     *
+     * @return the result of each query, in the order in which the queries were added.
+     * @throws SQLException if no connection could be obtained, or any of the queries failed.
+     */
+    public List<QueryResult> execute() throws SQLException {
+        QueryResult[] results = new QueryResult[queries.size()];
+        List<Integer> remote = new ArrayList<>();
+
+        for (int i = 0; i < queries.size(); i++) {
+            results[i] = queries.get(i).executeLocally();
+            if (results[i] == null) {
+                remote.add(i);
+            }
+        }
+
+        if (remote.size() == 1) {
+            int index = remote.get(0);
+            results[index] = queries.get(index).executeRemotely();
+        } else if (remote.size() > 1) {
+            executeRemotely(remote, results);
+        }
+        return List.of(results);
+    }
+
+    /**
+     * Send the given queries to the database as one multi-statement request, and store the result of each in the
+     * given array at the query's position.
+     */
+    private void executeRemotely(List<Integer> remote, QueryResult[] results) throws SQLException {
+        StringJoiner statements = new StringJoiner("; ");
+        for (int index : remote) {
+            statements.add(queries.get(index).getNormalisedQueryString());
+        }
+
+        Connection conn = DatabaseConnector.connect();
+        if (conn == null) {
+            throw new SQLException("Could not connect to the database.");
+        }
+        try (conn; PreparedStatement statement = conn.prepareStatement(statements.toString())) {
+            statement.setQueryTimeout(timeoutOf(remote));
+            int offset = 0;
+            for (int index : remote) {
+                offset += queries.get(index).bindParameters(statement, offset);
+            }
+
+            try {
+                for (int index : remote) {
+                    queries.get(index).setActiveStatement(statement);
+                }
+                readResults(statement, remote, results);
+            } finally {
+                for (int index : remote) {
+                    queries.get(index).setActiveStatement(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the multi-statement request, and store the result of each of the given queries in the given array at the
+     * query's position.
+     */
+    private void readResults(PreparedStatement statement, List<Integer> remote, QueryResult[] results)
+            throws SQLException {
+        boolean isResultSet = statement.execute();
+        for (int index : remote) {
+            // Skip past any update counts to the next result set.
+            while (!isResultSet && statement.getUpdateCount() != -1) {
+                isResultSet = statement.getMoreResults();
+            }
+            if (!isResultSet) {
+                throw new SQLException("Expected a result for: " + queries.get(index).getQueryString());
+            }
+            try (ResultSet resultSet = statement.getResultSet()) {
+                results[index] = QueryResult.from(resultSet);
+            }
+            isResultSet = statement.getMoreResults();
+        }
+    }
+
+    /**
+     * Find the timeout of a request holding the given queries: the longest of their timeouts, or 0 for no limit if any
+     * of them has none.
+     */
+    private int timeoutOf(List<Integer> remote) {
+        int timeoutSeconds = 0;
+        for (int index : remote) {
+            int timeout = queries.get(index).getTimeout();
+            if (timeout == 0) {
+                return 0;
+            }
+            timeoutSeconds = Math.max(timeoutSeconds, timeout);
+        }
+        return timeoutSeconds;
+    }
+}
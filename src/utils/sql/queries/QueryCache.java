@@ -0,0 +1,217 @@
+package utils.sql.queries;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class to cache the results of queries.
+ * <p>
+ * Users tend to move back and forth between the same date ranges and boroughs, which runs the same queries again and
+ * again. Since a QueryResult is immutable, it can be kept and handed out again for as long as the data it was read
+ * from is not expected to change.
+ * <p>
+ * Results are keyed by the query string, with whitespace and any trailing semicolon normalised away, together with the
+ * values of the query's parameters. The cache holds a bounded number of results and evicts the least recently used one
+ * when it is full. Each result also expires a fixed time after it was stored. Results can be removed explicitly, one
+ * query at a time or all at once.
+ * <p>
+ * The cache counts its hits, misses and evictions, so that its size can be tuned to how users move through the
+ * application. The maximum number of results and their time to live can be configured with the
+ * "epiquest.cache.maxEntries" and "epiquest.cache.ttlSeconds" system properties.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.10
+ */
+public class QueryCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 128;
+    private static final long DEFAULT_TTL_SECONDS = 600;
+    private static QueryCache instance;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<List<Object>, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor for the QueryCache class.
+     *
+     * @param maxEntries the maximum number of results held at once.
+     * @param ttlSeconds how long a result is kept after it was stored.
+     */
+    public QueryCache(int maxEntries, long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                if (size() <= QueryCache.this.maxEntries) {
+                    return false;
+                }
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Method to get the instance of the QueryCache class shared by the application.
+     *
+     * @return the instance of the QueryCache class.
+     */
+    public static synchronized QueryCache getInstance() {
+        if (instance == null) {
+            instance = new QueryCache(Integer.getInteger("epiquest.cache.maxEntries", DEFAULT_MAX_ENTRIES),
+                    Long.getLong("epiquest.cache.ttlSeconds", DEFAULT_TTL_SECONDS));
+        }
+        return instance;
+    }
+
+    /**
+     * Look up the cached result of a query.
+     *
+     * @param query the query.
+     * @return the cached result, or null if the query has no result cached or its result has expired.
+     */
+    public synchronized QueryResult get(Query query) {
+        List<Object> key = keyOf(query);
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime())) {
+            entries.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * Look up the cached result of a query, or execute the query and cache its result if there is none.
+     * A query that fails is not cached. The cache is not locked while the query runs, so two threads asking for the
+     * same uncached query at once may both run it.
+     *
+     * @param query the query.
+     * @return the result of the query.
+     * @throws SQLException if the query had to be executed, and failed.
+     */
+    public QueryResult getOrExecute(Query query) throws SQLException {
+        QueryResult cached = get(query);
+        if (cached != null) {
+            return cached;
+        }
+        QueryResult result = query.execute();
+        put(query, result);
+        return result;
+    }
+
+    /**
+     * Store the result of a query, replacing any result already cached for it.
+     *
+     * @param query  the query.
+     * @param result the result of the query.
+     */
+    public synchronized void put(Query query, QueryResult result) {
+        entries.put(keyOf(query), new Entry(result, System.nanoTime()));
+    }
+
+    /**
+     * Remove the cached result of a query, if there is one.
+     *
+     * @param query the query.
+     */
+    public synchronized void invalidate(Query query) {
+        entries.remove(keyOf(query));
+    }
+
+    /**
+     * Remove every cached result.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Remove every result that has expired.
+     * Expired results are also removed when they are looked up, so this only frees their memory sooner.
+     */
+    public synchronized void removeExpired() {
+        long now = System.nanoTime();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), now)) {
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of results currently cached.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of lookups that found a cached result.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that found no cached result.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of results removed because the cache was full or they had expired.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Build the key of a query from its normalised query string and the values of its parameters.
+     */
+    private static List<Object> keyOf(Query query) {
+        List<Object> key = new ArrayList<>();
+        key.add(query.getNormalisedQueryString());
+        key.addAll(query.getParameters());
+        return key;
+    }
+
+    /**
+     * Check whether a cached result has outlived its time to live.
+     */
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.storedAt >= ttlNanos;
+    }
+
+    /**
+     * A cached result, together with the time it was stored.
+     */
+    private static class Entry {
+
+        private final QueryResult result;
+        private final long storedAt;
+
+        private Entry(QueryResult result, long storedAt) {
+            this.result = result;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package utils.sql.queries;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class holds the rows returned by a query, fully read into memory.
+ * <p>
+ * A QueryResult is detached from the database: it is built on the worker thread that ran the query, after which the
+ * statement and connection are released. Reading from it never touches the network, so it is safe to use on the
+ * JavaFX Application Thread. It is also immutable, so it can be shared between threads.
+ * <p>
+ * The values are stored column by column. Whole numbers are kept in long arrays, decimal numbers in double arrays and
+ * everything else as Strings, with repeated Strings in a column sharing a single instance. As with a JDBC ResultSet,
+ * reading a NULL value as a number returns 0.
+ * <p>
+ * Results that are computed locally rather than read from the database can be assembled row by row with a Builder.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.12
+ */
+public class QueryResult {
+
+    private static final QueryResult EMPTY = new QueryResult(new String[0], new Object[0], new BitSet[0], 0);
+
+    private final String[] columnLabels;
+    private final Map<String, Integer> columnIndexes;
+    private final Object[] columns;
+    private final BitSet[] nulls;
+    private final int rowCount;
+
+    /**
+     * Constructor for the QueryResult class.
+     *
+     * @param columnLabels the labels of the columns.
+     * @param columns      one long[], double[] or String[] per column, each holding at least rowCount values.
+     * @param nulls        one BitSet per column, marking the rows where that column is NULL.
+     * @param rowCount     the number of rows.
+     */
+    QueryResult(String[] columnLabels, Object[] columns, BitSet[] nulls, int rowCount) {
+        this.columnLabels = columnLabels;
+        this.columns = columns;
+        this.nulls = nulls;
+        this.rowCount = rowCount;
+
+        // Column labels are case-insensitive, as they are in JDBC.
+        this.columnIndexes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < columnLabels.length; i++) {
+            columnIndexes.putIfAbsent(columnLabels[i], i);
+        }
+    }
+
+    /**
+     * @return a result with no columns and no rows.
+     */
+    public static QueryResult empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Read every remaining row of a ResultSet into a new QueryResult.
+     * The ResultSet is not closed; that is left to whoever opened it.
+     *
+     * @param resultSet the ResultSet to read.
+     * @return the rows of the ResultSet, detached from the database.
+     * @throws SQLException if the ResultSet cannot be read.
+     */
+    public static QueryResult from(ResultSet resultSet) throws SQLException {
+        return from(resultSet, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Read up to a given number of rows of a ResultSet into a new QueryResult, leaving the rest to be read later.
+     * The ResultSet is not closed; that is left to whoever opened it.
+     *
+     * @param resultSet the ResultSet to read.
+     * @param maxRows   the largest number of rows to read.
+     * @return the rows read, detached from the database. Fewer than maxRows are returned only if the ResultSet has no
+     * more rows.
+     * @throws SQLException if the ResultSet cannot be read.
+     */
+    public static QueryResult from(ResultSet resultSet, int maxRows) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        String[] labels = new String[columnCount];
+        int[] types = new int[columnCount];
+        Object[] columns = new Object[columnCount];
+        BitSet[] nulls = new BitSet[columnCount];
+        Map<String, String> sharedStrings = new HashMap<>();
+        int capacity = 16;
+
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+            types[i] = storageType(metaData.getColumnType(i + 1));
+            columns[i] = allocate(types[i], capacity);
+            nulls[i] = new BitSet();
+        }
+
+        int row = 0;
+        while (row < maxRows && resultSet.next()) {
+            if (row == capacity) {
+                capacity *= 2;
+                for (int i = 0; i < columnCount; i++) {
+                    columns[i] = grow(columns[i], capacity);
+                }
+            }
+            for (int i = 0; i < columnCount; i++) {
+                switch (types[i]) {
+                    case Types.BIGINT -> ((long[]) columns[i])[row] = resultSet.getLong(i + 1);
+                    case Types.DOUBLE -> ((double[]) columns[i])[row] = resultSet.getDouble(i + 1);
+                    default -> {
+                        String value = resultSet.getString(i + 1);
+                        ((String[]) columns[i])[row] = value == null ? null : sharedStrings.computeIfAbsent(value, v -> v);
+                    }
+                }
+                if (resultSet.wasNull()) {
+                    nulls[i].set(row);
+                }
+            }
+            row++;
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = grow(columns[i], row);
+        }
+        return new QueryResult(labels, columns, nulls, row);
+    }
+
+    /**
+     * Join several results with the same columns into one, keeping the rows in order.
+     *
+     * @param results the results to join, which must all have the same column labels and storage types.
+     * @return a result holding the rows of every given result, or an empty result if none are given.
+     * @throws IllegalArgumentException if the results do not have the same columns.
+     */
+    public static QueryResult concat(List<QueryResult> results) {
+        if (results.isEmpty()) {
+            return EMPTY;
+        }
+        QueryResult first = results.get(0);
+        int columnCount = first.columnLabels.length;
+        int rowCount = 0;
+        for (QueryResult result : results) {
+            if (!Arrays.equals(result.columnLabels, first.columnLabels)) {
+                throw new IllegalArgumentException("Cannot join results with columns " +
+                        Arrays.toString(first.columnLabels) + " and " + Arrays.toString(result.columnLabels));
+            }
+            rowCount += result.rowCount;
+        }
+
+        Object[] columns = new Object[columnCount];
+        BitSet[] nulls = new BitSet[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = grow(first.columns[i], rowCount);
+            nulls[i] = new BitSet();
+            int offset = 0;
+            for (QueryResult result : results) {
+                if (result.columns[i].getClass() != columns[i].getClass()) {
+                    throw new IllegalArgumentException("Cannot join results storing column " + first.columnLabels[i] +
+                            " differently");
+                }
+                System.arraycopy(result.columns[i], 0, columns[i], offset, result.rowCount);
+                BitSet resultNulls = result.nulls[i];
+                for (int row = resultNulls.nextSetBit(0); row >= 0; row = resultNulls.nextSetBit(row + 1)) {
+                    nulls[i].set(offset + row);
+                }
+                offset += result.rowCount;
+            }
+        }
+        return new QueryResult(first.columnLabels.clone(), columns, nulls, rowCount);
+    }
+
+    /**
+     * @return the number of rows in the result.
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * @return true if the result has no rows.
+     */
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    /**
+     * @return the labels of the columns in the result, in order.
+     */
+    public String[] getColumnLabels() {
+        return columnLabels.clone();
+    }
+
+    /**
+     * @param row    the index of the row, starting at 0.
+     * @param column the label of the column.
+     * @return true if the value in the given row and column is NULL.
+     */
+    public boolean isNull(int row, String column) {
+        checkRow(row);
+        return nulls[indexOf(column)].get(row);
+    }
+
+    /**
+     * @param row    the index of the row, starting at 0.
+     * @param column the label of the column.
+     * @return the value in the given row and column as a String, or null if the value is NULL.
+     */
+    public String getString(int row, String column) {
+        checkRow(row);
+        int index = indexOf(column);
+        if (nulls[index].get(row)) {
+            return null;
+        }
+        Object values = columns[index];
+        if (values instanceof long[] longs) {
+            return Long.toString(longs[row]);
+        }
+        if (values instanceof double[] doubles) {
+            return Double.toString(doubles[row]);
+        }
+        return ((String[]) values)[row];
+    }
+
+    /**
+     * @param row    the index of the row, starting at 0.
+     * @param column the label of the column.
+     * @return the value in the given row and column as an int, or 0 if the value is NULL.
+     */
+    public int getInt(int row, String column) {
+        return (int) getLong(row, column);
+    }
+
+    /**
+     * @param row    the index of the row, starting at 0.
+     * @param column the label of the column.
+     * @return the value in the given row and column as a long, or 0 if the value is NULL.
+     */
+    public long getLong(int row, String column) {
+        checkRow(row);
+        int index = indexOf(column);
+        if (nulls[index].get(row)) {
+            return 0;
+        }
+        Object values = columns[index];
+        if (values instanceof long[] longs) {
+            return longs[row];
+        }
+        if (values instanceof double[] doubles) {
+            return (long) doubles[row];
+        }
+        return (long) Double.parseDouble(((String[]) values)[row]);
+    }
+
+    /**
+     * @param row    the index of the row, starting at 0.
+     * @param column the label of the column.
+     * @return the value in the given row and column as a double, or 0 if the value is NULL.
+     */
+    public double getDouble(int row, String column) {
+        checkRow(row);
+        int index = indexOf(column);
+        if (nulls[index].get(row)) {
+            return 0;
+        }
+        Object values = columns[index];
+        if (values instanceof long[] longs) {
+            return longs[row];
+        }
+        if (values instanceof double[] doubles) {
+            return doubles[row];
+        }
+        return Double.parseDouble(((String[]) values)[row]);
+    }
+
+    /**
+     * Find the position of a column from its label.
+     */
+    private int indexOf(String column) {
+        Integer index = columnIndexes.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("No column labelled " + column + " in " + Arrays.toString(columnLabels));
+        }
+        return index;
+    }
+
+    /**
+     * Check that a row index is within the bounds of the result.
+     */
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for result of " + rowCount + " rows");
+        }
+    }
+
+    /**
+     * Choose how a column of the given SQL type is stored: as longs (BIGINT), doubles (DOUBLE) or Strings (VARCHAR).
+     */
+    private static int storageType(int sqlType) {
+        return switch (sqlType) {
+            case Types.BIT, Types.BOOLEAN, Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> Types.BIGINT;
+            case Types.REAL, Types.FLOAT, Types.DOUBLE, Types.DECIMAL, Types.NUMERIC -> Types.DOUBLE;
+            default -> Types.VARCHAR;
+        };
+    }
+
+    /**
+     * Create an array of the given storage type.
+     */
+    private static Object allocate(int storageType, int capacity) {
+        return switch (storageType) {
+            case Types.BIGINT -> new long[capacity];
+            case Types.DOUBLE -> new double[capacity];
+            default -> new String[capacity];
+        };
+    }
+
+    /**
+     * Copy an array of any storage type into a new array of the given length.
+     */
+    private static Object grow(Object values, int length) {
+        if (values instanceof long[] longs) {
+            return Arrays.copyOf(longs, length);
+        }
+        if (values instanceof double[] doubles) {
+            return Arrays.copyOf(doubles, length);
+        }
+        return Arrays.copyOf((String[]) values, length);
+    }
+
+    /**
+     * Assembles a QueryResult row by row, for results that are computed locally rather than read from the database.
+     * <p>
+     * A column is stored as whole numbers if all of its values are Integers or Longs, as decimal numbers if they are
+     * any other kind of Number, and as Strings otherwise. A null value is stored as NULL.
+     */
+    public static class Builder {
+
+        private final String[] columnLabels;
+        private final List<Object[]> rows;
+
+        /**
+         * Constructor for the Builder class.
+         *
+         * @param columnLabels the labels of the columns of the result.
+         */
+        public Builder(String... columnLabels) {
+            this.columnLabels = columnLabels.clone();
+            this.rows = new ArrayList<>();
+        }
+
+        /**
+         * Add a row to the result.
+         *
+         * @param values the values of the row, one per column, in order.
+         * @return this builder.
+         */
+        public Builder addRow(Object... values) {
+            if (values.length != columnLabels.length) {
+                throw new IllegalArgumentException("Expected " + columnLabels.length + " values but got " + values.length);
+            }
+            rows.add(values.clone());
+            return this;
+        }
+
+        /**
+         * @return a QueryResult holding the rows added so far.
+         */
+        public QueryResult build() {
+            int rowCount = rows.size();
+            Object[] columns = new Object[columnLabels.length];
+            BitSet[] nulls = new BitSet[columnLabels.length];
+
+            for (int i = 0; i < columnLabels.length; i++) {
+                int storageType = storageTypeOf(i);
+                columns[i] = allocate(storageType, rowCount);
+                nulls[i] = new BitSet();
+
+                for (int row = 0; row < rowCount; row++) {
+                    Object value = rows.get(row)[i];
+                    if (value == null) {
+                        nulls[i].set(row);
+                        continue;
+                    }
+                    switch (storageType) {
+                        case Types.BIGINT -> ((long[]) columns[i])[row] = ((Number) value).longValue();
+                        case Types.DOUBLE -> ((double[]) columns[i])[row] = ((Number) value).doubleValue();
+                        default -> ((String[]) columns[i])[row] = value.toString();
+                    }
+                }
+            }
+            return new QueryResult(columnLabels.clone(), columns, nulls, rowCount);
+        }
+
+        /**
+         * Choose how a column is stored from the values added to it.
+         */
+        private int storageTypeOf(int column) {
+            int storageType = Types.BIGINT;
+            for (Object[] row : rows) {
+                Object value = row[column];
+                if (value == null || value instanceof Integer || value instanceof Long) {
+                    continue;
+                }
+                if (!(value instanceof Number)) {
+                    return Types.VARCHAR;
+                }
+                storageType = Types.DOUBLE;
+            }
+            return storageType;
+        }
+    }
+}
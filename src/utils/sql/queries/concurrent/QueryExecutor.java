@@ -1,43 +1,270 @@
 package utils.sql.queries.concurrent;
 
+import javafx.application.Platform;
 import utils.sql.queries.Query;
+import utils.sql.queries.QueryResult;
 
-import java.sql.ResultSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * This class is responsible for executing a SQL query on a separate thread.
- * It uses a single thread executor to run the query and return a Future object representing the ResultSet of the query.
- * A separate thread is used to prevent the GUI from freezing while the query is being executed.
- * The runQuery method retrieves the PreparedStatement from the Query object and executes it in a separate thread. It
- * returns a Future representing the ResultSet of the query.
+ * This class is responsible for executing SQL queries on background threads.
+ * <p>
+ * A single instance is shared by the whole application, so every query runs on the same bounded pool of worker
+ * threads instead of each query creating, and leaking, a thread of its own. A separate thread is used to prevent the
+ * GUI from freezing while the query is being executed.
+ * <p>
+ * Work waiting for a free worker is held in a bounded queue. When the queue is full, the submitting thread is made to
+ * wait for space for a short while, which slows down whoever is producing work faster than the database can answer
+ * it. If no space frees up in time, the work is rejected. Work submitted on the JavaFX Application Thread is rejected
+ * at once instead, so that a full queue never freezes the GUI; the caller then shows that its data could not be
+ * loaded.
+ * <p>
+ * Once the executor has been shut down, every task submitted to it is rejected, as the application is exiting.
+ * <p>
+ * Cancelling a query asks the database to stop it, which takes a round trip of its own. Cancels are sent from a
+ * separate thread, so they never wait behind the work in the queue, and never hold up anything else while the
+ * database answers.
+ * <p>
+ * The size of the pool and the capacity of the queue can be configured with the "epiquest.query.poolSize" and
+ * "epiquest.query.queueCapacity" system properties.
  *
  * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
- * @version 2024.03.27
+ * @version 2024.04.25
  */
-public class QueryExecutor {
+public class QueryExecutor implements Executor {
 
-    private final ExecutorService threadPoolExecutor;
-    private final Query query;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final long SUBMIT_TIMEOUT_MILLIS = 2_000;
+    private static QueryExecutor instance;
+    private static boolean shutDown;
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+    private final ExecutorService canceller;
+    private final AtomicLong rejectedTasks;
 
     /**
      * Constructor for the QueryExecutor class.
      *
+     * @param poolSize      the number of worker threads.
+     * @param queueCapacity the number of tasks that may wait for a free worker.
+     */
+    private QueryExecutor(int poolSize, int queueCapacity) {
+        this.rejectedTasks = new AtomicLong();
+        this.threadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory("query-worker-"),
+                this::applyBackpressure);
+        this.canceller = Executors.newSingleThreadExecutor(new WorkerThreadFactory("query-canceller-"));
+    }
+
+    /**
+     * Method to get the instance of the QueryExecutor class.
+     * <p>
+     * After shutdown has been called, the instance returned has been shut down too, so it rejects every task.
+     *
+     * @return the instance of the QueryExecutor class.
+     */
+    public static synchronized QueryExecutor getInstance() {
+        if (instance == null) {
+            instance = new QueryExecutor(Integer.getInteger("epiquest.query.poolSize", DEFAULT_POOL_SIZE),
+                    Integer.getInteger("epiquest.query.queueCapacity", DEFAULT_QUEUE_CAPACITY));
+            if (shutDown) {
+                instance.threadPoolExecutor.shutdown();
+                instance.canceller.shutdown();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Stop accepting new work and wait briefly for the work already submitted to finish.
+     * Work still running after that is interrupted. This should be called when the application exits.
+     * <p>
+     * The instance is kept, so any work submitted afterwards is rejected rather than starting a new pool.
+     */
+    public static synchronized void shutdown() {
+        if (shutDown) {
+            return;
+        }
+        shutDown = true;
+        if (instance == null) {
+            return;
+        }
+        ThreadPoolExecutor executor = instance.threadPoolExecutor;
+        instance.canceller.shutdown();
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executes the query on a worker thread and returns a Future object representing the result of the query.
+     *
      * @param query The query to be executed.
+     * @return A Future object representing the result of the query, read fully into memory.
      */
-    public QueryExecutor(Query query) {
-        this.threadPoolExecutor = Executors.newSingleThreadExecutor();
-        this.query = query;
+    public Future<QueryResult> runQuery(Query query) {
+        return submit(query::execute);
     }
 
     /**
-     * Executes the query in a separate thread and returns a Future object representing the ResultSet of the query.
+     * Submits a task to be run on a worker thread.
      *
-     * @return A Future object representing the ResultSet of the query.
+     * @param task The task to be run.
+     * @param <T>  The type of the result of the task.
+     * @return A Future object representing the result of the task.
+     * @throws RejectedExecutionException if the queue stayed full for too long, or was full when submitting on the
+     *                                    JavaFX Application Thread, or the executor has been shut down.
      */
-    public Future<ResultSet> runQuery() {
-        return threadPoolExecutor.submit(() -> query.getStatement().executeQuery());
+    public <T> Future<T> submit(Callable<T> task) {
+        return threadPoolExecutor.submit(task);
+    }
+
+    /**
+     * Runs a task on a worker thread.
+     *
+     * @param task The task to be run.
+     * @throws RejectedExecutionException if the queue stayed full for too long, or was full when submitting on the
+     *                                    JavaFX Application Thread, or the executor has been shut down.
+     */
+    @Override
+    public void execute(Runnable task) {
+        threadPoolExecutor.execute(task);
+    }
+
+    /**
+     * Runs a task on a worker thread, rejecting it at once if the queue is full rather than waiting for space. This is
+     * meant for threads that must never be held up, such as one shared by several views.
+     *
+     * @param task The task to be run.
+     * @throws RejectedExecutionException if the queue is full, or the executor has been shut down.
+     */
+    public void executeWithoutWaiting(Runnable task) {
+        threadPoolExecutor.execute(new ImmediateTask(task));
+    }
+
+    /**
+     * Cancels a query on the thread kept for cancelling queries, so the calling thread never waits for the database,
+     * and the cancel never waits for a free worker.
+     *
+     * @param query The query to be cancelled.
+     * @throws RejectedExecutionException if the executor has been shut down.
+     */
+    public void cancel(Query query) {
+        canceller.execute(query::cancel);
+    }
+
+    /**
+     * @return The number of tasks waiting for a free worker.
+     */
+    public int getQueueDepth() {
+        return threadPoolExecutor.getQueue().size();
+    }
+
+    /**
+     * @return The number of workers currently running a task.
+     */
+    public int getActiveWorkers() {
+        return threadPoolExecutor.getActiveCount();
+    }
+
+    /**
+     * @return The number of tasks that have finished running.
+     */
+    public long getCompletedTasks() {
+        return threadPoolExecutor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return The number of tasks that were rejected because the queue stayed full or the executor was shut down.
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks.get();
+    }
+
+    /**
+     * Called by the thread pool when its queue is full. Makes the submitting thread wait for space in the queue, and
+     * rejects the task if none frees up in time. The JavaFX Application Thread is never made to wait, so a task it
+     * submits is rejected at once, as is a task submitted with executeWithoutWaiting.
+     */
+    private void applyBackpressure(Runnable task, ThreadPoolExecutor executor) {
+        if (!executor.isShutdown() && !Platform.isFxApplicationThread() && !(task instanceof ImmediateTask)) {
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            try {
+                if (queue.offer(task, SUBMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        rejectedTasks.incrementAndGet();
+        throw new RejectedExecutionException("The query queue is full or has been shut down.");
+    }
+
+    /**
+     * A task submitted with executeWithoutWaiting, which is rejected rather than made to wait for space in the queue.
+     */
+    private static class ImmediateTask implements Runnable {
+
+        private final Runnable task;
+
+        /**
+         * Constructor for the ImmediateTask class.
+         *
+         * @param task the task to be run.
+         */
+        ImmediateTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * Creates named daemon worker threads, so that they never keep the application alive on their own.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        /**
+         * Constructor for the WorkerThreadFactory class.
+         *
+         * @param prefix the start of the name of every thread, which is followed by its number.
+         */
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
-}
\ No newline at end of file
+}
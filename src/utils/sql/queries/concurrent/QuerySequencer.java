@@ -0,0 +1,213 @@
+package utils.sql.queries.concurrent;
+
+import utils.sql.queries.Query;
+import utils.sql.queries.QueryCache;
+import utils.sql.queries.QueryResult;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * This class runs the queries of a single view, making sure that only the result of the latest one is used.
+ * <p>
+ * Views that query the database whenever the user changes a selection can easily submit queries faster than the
+ * database answers them. Without sequencing, every one of those queries runs to completion, and each result overwrites
+ * the view when it arrives, in whatever order they finish.
+ * <p>
+ * A QuerySequencer waits for the input to settle before it runs a query: a query is only started once no newer one has
+ * been submitted for the debounce delay. Submitting a query cancels the one before it, both while it is waiting and
+ * while it is running on the database. Results arriving for a query that has since been superseded are discarded.
+ * Every query is also given a timeout, so a slow query cannot hold a connection forever.
+ * <p>
+ * Results go through the application's QueryCache, and are delivered on the callback executor given at construction,
+ * usually Platform::runLater. A result can first be turned into whatever the caller needs on the worker thread that
+ * ran the query, so the callback executor only receives the finished product. If the latest query could not be run,
+ * or failed, the caller is told on the callback executor too, so it never keeps showing the result of an older one.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.25
+ */
+public class QuerySequencer {
+
+    /**
+     * Single thread shared by every sequencer, which waits out the debounce delays so that they never block the thread
+     * submitting the queries. Superseded queries are cancelled on the QueryExecutor instead, so that waiting for the
+     * database to stop one never delays the next query.
+     */
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+    private final long debounceMillis;
+    private final int timeoutSeconds;
+    private final Executor callbackExecutor;
+    private long latest;
+    private ScheduledFuture<?> waiting;
+    private Query current;
+
+    /**
+     * Constructor for the QuerySequencer class.
+     *
+     * @param debounceMillis   how long the input must settle before a query is run, in milliseconds.
+     * @param timeoutSeconds   the number of seconds each query may run for on the database.
+     * @param callbackExecutor the executor on which results are delivered.
+     */
+    public QuerySequencer(long debounceMillis, int timeoutSeconds, Executor callbackExecutor) {
+        this.debounceMillis = debounceMillis;
+        this.timeoutSeconds = timeoutSeconds;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Submit a query, superseding every query submitted before it.
+     * <p>
+     * The query is run once no other query has been submitted for the debounce delay. If it is still the latest query
+     * when its result arrives, the result is passed to onResult on the callback executor. If it could not be run, or
+     * failed, the error is reported and, if it is still the latest query, onFailed is run on the callback executor
+     * instead.
+     *
+     * @param query    the query to run.
+     * @param onResult the consumer of the result of the query.
+     * @param onFailed the runnable to run if the query could not be run, or failed.
+     */
+    public void submit(Query query, Consumer<QueryResult> onResult, Runnable onFailed) {
+        submit(query, Function.identity(), onResult, onFailed);
+    }
+
+    /**
+     * Submit a query, superseding every query submitted before it, and prepare its result on the worker thread.
+     * <p>
+     * The query is run once no other query has been submitted for the debounce delay. Its result is passed to prepare
+     * on the worker thread that ran it, and, if the query is still the latest when that is done, whatever prepare
+     * returns is passed to onResult on the callback executor. If the query could not be run, or failed, the error is
+     * reported and neither is called; if it is still the latest query, onFailed is run on the callback executor
+     * instead.
+     *
+     * @param query    the query to run.
+     * @param prepare  the function turning the result of the query into what onResult needs.
+     * @param onResult the consumer of the prepared result.
+     * @param onFailed the runnable to run if the query could not be run, or failed.
+     * @param <T>      the type of the prepared result.
+     */
+    public synchronized <T> void submit(Query query, Function<QueryResult, T> prepare, Consumer<T> onResult,
+                                        Runnable onFailed) {
+        long sequence = supersede();
+        current = query;
+        if (query.getTimeout() == 0) {
+            query.withTimeout(timeoutSeconds);
+        }
+        waiting = SCHEDULER.schedule(() -> start(sequence, query, prepare, onResult, onFailed), debounceMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel the latest query, whether it is waiting or running, so that no result is delivered for it.
+     */
+    public synchronized void cancel() {
+        supersede();
+        current = null;
+    }
+
+    /**
+     * Mark every query submitted so far as superseded, cancelling the one waiting or running.
+     *
+     * @return the sequence number of the next query.
+     */
+    private long supersede() {
+        if (waiting != null) {
+            waiting.cancel(false);
+            waiting = null;
+        }
+        if (current != null) {
+            try {
+                QueryExecutor.getInstance().cancel(current);
+            } catch (RejectedExecutionException e) {
+                System.out.println("Error cancelling the superseded query: " + e.getMessage());
+            }
+        }
+        return ++latest;
+    }
+
+    /**
+     * Check whether a query is still the latest one submitted.
+     */
+    private synchronized boolean isLatest(long sequence) {
+        return sequence == latest;
+    }
+
+    /**
+     * Hand a query whose debounce delay has passed to the query executor, unless it has been superseded. The scheduler
+     * thread is shared by every sequencer, so it never waits for space in the queue: if the queue is full, the query
+     * fails at once.
+     */
+    private <T> void start(long sequence, Query query, Function<QueryResult, T> prepare, Consumer<T> onResult,
+                           Runnable onFailed) {
+        if (!isLatest(sequence)) {
+            return;
+        }
+        try {
+            QueryExecutor.getInstance().executeWithoutWaiting(() -> run(sequence, query, prepare, onResult, onFailed));
+        } catch (RejectedExecutionException e) {
+            System.out.println("Error scheduling query: " + e.getMessage());
+            fail(sequence, onFailed);
+        }
+    }
+
+    /**
+     * Run a query on a worker thread, prepare its result and deliver it, unless it has been superseded by then.
+     */
+    private <T> void run(long sequence, Query query, Function<QueryResult, T> prepare, Consumer<T> onResult,
+                         Runnable onFailed) {
+        if (!isLatest(sequence)) {
+            return;
+        }
+        QueryResult result;
+        try {
+            result = QueryCache.getInstance().getOrExecute(query);
+        } catch (SQLException e) {
+            if (isLatest(sequence)) {
+                System.out.println("Error running query: " + e.getMessage());
+                fail(sequence, onFailed);
+            }
+            return;
+        }
+        if (!isLatest(sequence)) {
+            return;
+        }
+        T prepared = prepare.apply(result);
+        callbackExecutor.execute(() -> {
+            if (isLatest(sequence)) {
+                onResult.accept(prepared);
+            }
+        });
+    }
+
+    /**
+     * Tell the caller on the callback executor that a query could not be run, unless it has been superseded by then.
+     */
+    private void fail(long sequence, Runnable onFailed) {
+        callbackExecutor.execute(() -> {
+            if (isLatest(sequence)) {
+                onFailed.run();
+            }
+        });
+    }
+
+    /**
+     * Create the scheduler thread shared by every sequencer.
+     */
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "query-sequencer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
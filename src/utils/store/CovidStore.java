@@ -0,0 +1,149 @@
+package utils.store;
+
+import utils.sql.queries.Query;
+import utils.sql.queries.QueryResult;
+import utils.sql.queries.concurrent.QueryExecutor;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class to keep an in-memory copy of the covid_london table.
+ * <p>
+ * The whole dataset is small enough to keep in memory, so it is read from the database once, in the background, and
+ * stored in a CovidTable. Queries that know how to answer themselves from a CovidTable use it instead of going to the
+ * database.
+ * <p>
+ * The table is read a few boroughs at a time, starting while the user is still choosing dates on the welcome screen.
+ * After each chunk, a new CovidTable holding every borough read so far replaces the previous one, so queries about
+ * those boroughs can be answered locally straight away. A CovidTable is never changed once published, so queries
+ * running on an older one are unaffected. Queries that need boroughs not read yet go to the database as before.
+ * <p>
+ * Each chunk is read by its own task on the query executor, so the queries of the scenes the user is waiting for are
+ * not held up behind the whole dataset.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.09
+ */
+public class CovidStore {
+
+    private static final int BOROUGHS_PER_CHUNK = 8;
+    private static CovidStore instance;
+    private final AtomicBoolean loading;
+    private final List<QueryResult> chunks;
+    private Deque<String> pendingBoroughs;
+    private volatile CovidTable table;
+
+    /**
+     * Constructor for the CovidStore class.
+     */
+    private CovidStore() {
+        loading = new AtomicBoolean(false);
+        chunks = new ArrayList<>();
+    }
+
+    /**
+     * Method to get the instance of the CovidStore class.
+     *
+     * @return the instance of the CovidStore class.
+     */
+    public static synchronized CovidStore getInstance() {
+        if (instance == null) {
+            instance = new CovidStore();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the in-memory copy of the covid_london table, which may hold only some of the boroughs, or null if no
+     * borough has been loaded yet.
+     */
+    public CovidTable getTable() {
+        return table;
+    }
+
+    /**
+     * Start loading the rest of the covid_london table in the background, unless it is already loaded or being loaded.
+     */
+    public void loadInBackground() {
+        CovidTable current = table;
+        if ((current != null && current.isComplete()) || !loading.compareAndSet(false, true)) {
+            return;
+        }
+        scheduleNextChunk();
+    }
+
+    /**
+     * Submit the task reading the next chunk of boroughs to the query executor.
+     */
+    private void scheduleNextChunk() {
+        try {
+            QueryExecutor.getInstance().execute(this::loadNextChunk);
+        } catch (RejectedExecutionException e) {
+            loading.set(false);
+        }
+    }
+
+    /**
+     * Read the rows of the next few boroughs and publish a new CovidTable holding every borough read so far. If there
+     * are more boroughs to read, another task is scheduled for them.
+     * <p>
+     * Only one chunk is read at a time, so the chunks and the boroughs still to read are only ever used by one thread
+     * at once. If a chunk cannot be read, its boroughs are kept, and a later call to loadInBackground will try again.
+     */
+    private void loadNextChunk() {
+        List<String> boroughs = new ArrayList<>();
+        try {
+            if (pendingBoroughs == null) {
+                pendingBoroughs = readBoroughs();
+            }
+            while (boroughs.size() < BOROUGHS_PER_CHUNK && !pendingBoroughs.isEmpty()) {
+                boroughs.add(pendingBoroughs.poll());
+            }
+            if (!boroughs.isEmpty()) {
+                chunks.add(readChunk(boroughs));
+            }
+            table = new CovidTable(QueryResult.concat(chunks), pendingBoroughs.isEmpty());
+        } catch (SQLException e) {
+            System.out.println("Error loading the covid_london table into memory: " + e.getMessage());
+            for (int i = boroughs.size() - 1; i >= 0; i--) {
+                pendingBoroughs.addFirst(boroughs.get(i));
+            }
+            loading.set(false);
+            return;
+        }
+
+        if (pendingBoroughs.isEmpty()) {
+            loading.set(false);
+            return;
+        }
+        scheduleNextChunk();
+    }
+
+    /**
+     * Read the names of every borough in the covid_london table, in the order they are sorted by the database.
+     */
+    private Deque<String> readBoroughs() throws SQLException {
+        QueryResult result = new Query("SELECT DISTINCT borough FROM covid_london ORDER BY borough").execute();
+        Deque<String> boroughs = new ArrayDeque<>();
+        for (int row = 0; row < result.size(); row++) {
+            boroughs.add(result.getString(row, "borough"));
+        }
+        return boroughs;
+    }
+
+    /**
+     * Read every row of the given boroughs.
+     */
+    private QueryResult readChunk(List<String> boroughs) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(boroughs.size(), "?"));
+        return new Query("SELECT * FROM covid_london WHERE borough IN (" + placeholders + ") ORDER BY borough, `date`",
+                boroughs.toArray()).execute();
+    }
+}
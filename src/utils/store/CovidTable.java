@@ -0,0 +1,643 @@
+package utils.store;
+
+import utils.sql.queries.QueryResult;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class holds the covid_london table in memory, column by column.
+ * <p>
+ * The table may hold every borough, or only some of them while the rest are still being loaded. A partial table can
+ * only answer queries about the boroughs it holds: the query methods return null for anything it cannot answer, such
+ * as aggregates across London, so that the query can be run on the database instead.
+ * <p>
+ * Every column is a primitive int array with one entry per row, and the rows are sorted by borough and then by day.
+ * Borough names are replaced by small integer IDs, assigned in the order in which the boroughs were read, and dates
+ * are stored as the number of days since the epoch. The rows of each borough are therefore contiguous, and the range
+ * of rows covering any date range within a borough can be found with a binary search.
+ * <p>
+ * Sums and counts over a date range are answered from a cumulative index instead of by scanning rows. For every
+ * borough, and for London as a whole, the table keeps the running total and the running count of non-NULL values of
+ * every metric, with one entry per calendar day from the first to the last day in the table. The sum of a metric over
+ * any date range is then the difference between two entries, so it costs the same whether the range covers one day or
+ * the whole dataset.
+ * <p>
+ * Besides primitive aggregates, the table can answer each of the queries the controllers run against covid_london
+ * locally, returning a QueryResult with the same columns the SQL query would have returned. NULL metric values are
+ * ignored by sums and averages, as they are in SQL.
+ * <p>
+ * A CovidTable is immutable, so it can be shared between threads.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.17
+ */
+public class CovidTable {
+
+    /**
+     * The names of the integer metric columns of the covid_london table.
+     */
+    public static final String[] METRICS = {"retail_and_recreation", "grocery_and_pharmacy", "parks",
+            "transit_stations", "workplaces", "residential", "new_cases", "total_cases", "new_deaths", "total_deaths"};
+
+    private static final Map<String, Integer> METRIC_INDEXES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < METRICS.length; i++) {
+            METRIC_INDEXES.put(METRICS[i], i);
+        }
+    }
+
+    private final boolean complete;
+    private final String[] columnLabels;
+    private final String[] boroughNames;
+    private final Map<String, Integer> boroughIds;
+    private final int[] boroughStarts;
+    private final int[] boroughColumn;
+    private final int[] dayColumn;
+    private final int[][] metricColumns;
+    private final BitSet[] metricNulls;
+    private final int firstDay;
+    private final int dayCount;
+    private final long[][] prefixSums;
+    private final int[][] prefixCounts;
+    private final int[] prefixRows;
+
+    /**
+     * Constructor for the CovidTable class.
+     * <p>
+     * Builds the columns from the rows of the covid_london table. The rows may arrive in any order; they are sorted by
+     * borough, in the order in which each borough first appears, and then by day.
+     *
+     * @param rows every row of the covid_london table.
+     */
+    CovidTable(QueryResult rows) {
+        this(rows, true);
+    }
+
+    /**
+     * Constructor for the CovidTable class.
+     * <p>
+     * Builds the columns from the rows of some or all of the boroughs of the covid_london table. The rows of each
+     * borough given must all be present.
+     *
+     * @param rows     the rows of the boroughs loaded so far.
+     * @param complete true if the rows cover every borough in the covid_london table.
+     */
+    CovidTable(QueryResult rows, boolean complete) {
+        this.complete = complete;
+        int rowCount = rows.size();
+        this.columnLabels = rows.getColumnLabels();
+
+        // Dictionary-encode the boroughs and convert the dates to epoch days.
+        Map<String, Integer> ids = new HashMap<>();
+        String[] names = new String[16];
+        int[] rawBoroughs = new int[rowCount];
+        int[] rawDays = new int[rowCount];
+        int minDay = Integer.MAX_VALUE;
+        for (int row = 0; row < rowCount; row++) {
+            String borough = rows.getString(row, "borough");
+            Integer id = ids.get(borough);
+            if (id == null) {
+                id = ids.size();
+                ids.put(borough, id);
+                if (id == names.length) {
+                    names = Arrays.copyOf(names, names.length * 2);
+                }
+                names[id] = borough;
+            }
+            rawBoroughs[row] = id;
+            rawDays[row] = toEpochDay(rows.getString(row, "date"));
+            minDay = Math.min(minDay, rawDays[row]);
+        }
+        this.boroughNames = Arrays.copyOf(names, ids.size());
+        this.boroughIds = ids;
+
+        // Sort the rows by borough and day. Each key packs the borough, the day and the original row into one long,
+        // which leaves 21 bits for the row, far more than the roughly 20,000 rows of the table.
+        long[] keys = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            keys[row] = (long) rawBoroughs[row] << 42 | (long) (rawDays[row] - minDay) << 21 | row;
+        }
+        Arrays.sort(keys);
+
+        this.boroughColumn = new int[rowCount];
+        this.dayColumn = new int[rowCount];
+        this.metricColumns = new int[METRICS.length][rowCount];
+        this.metricNulls = new BitSet[METRICS.length];
+        for (int metric = 0; metric < METRICS.length; metric++) {
+            metricNulls[metric] = new BitSet();
+        }
+
+        for (int row = 0; row < rowCount; row++) {
+            int source = (int) (keys[row] & ((1 << 21) - 1));
+            boroughColumn[row] = rawBoroughs[source];
+            dayColumn[row] = rawDays[source];
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                if (rows.isNull(source, METRICS[metric])) {
+                    metricNulls[metric].set(row);
+                    continue;
+                }
+                metricColumns[metric][row] = rows.getInt(source, METRICS[metric]);
+            }
+        }
+
+        this.boroughStarts = new int[boroughNames.length + 1];
+        for (int row = rowCount - 1; row >= 0; row--) {
+            boroughStarts[boroughColumn[row]] = row;
+        }
+        boroughStarts[boroughNames.length] = rowCount;
+
+        this.firstDay = rowCount == 0 ? 0 : minDay;
+        this.dayCount = rowCount == 0 ? 0 : Arrays.stream(rawDays).max().getAsInt() - minDay + 1;
+        this.prefixSums = new long[METRICS.length][];
+        this.prefixCounts = new int[METRICS.length][];
+        this.prefixRows = buildPrefixIndex();
+    }
+
+    /**
+     * Build the cumulative index of every metric, for every borough and for London as a whole.
+     * <p>
+     * Each series has dayCount + 1 entries, where entry k holds the total of the values on the k days before
+     * firstDay + k. The series of borough b starts at b * (dayCount + 1), and the series for London comes after the
+     * last borough.
+     *
+     * @return the cumulative number of rows, in the same layout.
+     */
+    private int[] buildPrefixIndex() {
+        int stride = dayCount + 1;
+        int london = boroughNames.length;
+        int length = (boroughNames.length + 1) * stride;
+        int[] rows = new int[length];
+        for (int metric = 0; metric < METRICS.length; metric++) {
+            prefixSums[metric] = new long[length];
+            prefixCounts[metric] = new int[length];
+        }
+
+        // Add each row's values to the entry after its day, for its borough and for London.
+        for (int row = 0; row < dayColumn.length; row++) {
+            int boroughEntry = boroughColumn[row] * stride + dayColumn[row] - firstDay + 1;
+            int londonEntry = london * stride + dayColumn[row] - firstDay + 1;
+            rows[boroughEntry]++;
+            rows[londonEntry]++;
+            for (int metric = 0; metric < METRICS.length; metric++) {
+                if (metricNulls[metric].get(row)) {
+                    continue;
+                }
+                prefixSums[metric][boroughEntry] += metricColumns[metric][row];
+                prefixSums[metric][londonEntry] += metricColumns[metric][row];
+                prefixCounts[metric][boroughEntry]++;
+                prefixCounts[metric][londonEntry]++;
+            }
+        }
+
+        // Turn the daily values into running totals, one series at a time.
+        for (int series = 0; series <= london; series++) {
+            for (int entry = series * stride + 1; entry < (series + 1) * stride; entry++) {
+                rows[entry] += rows[entry - 1];
+                for (int metric = 0; metric < METRICS.length; metric++) {
+                    prefixSums[metric][entry] += prefixSums[metric][entry - 1];
+                    prefixCounts[metric][entry] += prefixCounts[metric][entry - 1];
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param column the name of a column of the covid_london table.
+     * @return the index of the metric with that name, or -1 if the column is not a metric.
+     */
+    public static int metricIndex(String column) {
+        return METRIC_INDEXES.getOrDefault(column, -1);
+    }
+
+    /**
+     * @return true if the table holds every borough of the covid_london table, false if it holds only some of them.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @param boroughName the name of a borough.
+     * @return true if the table holds every row of the borough, or knows that the borough has no rows.
+     */
+    public boolean covers(String boroughName) {
+        return complete || boroughIds.containsKey(boroughName);
+    }
+
+    /**
+     * @return the number of rows in the table.
+     */
+    public int size() {
+        return dayColumn.length;
+    }
+
+    /**
+     * @return the number of distinct boroughs in the table.
+     */
+    public int getBoroughCount() {
+        return boroughNames.length;
+    }
+
+    /**
+     * @param borough the ID of a borough.
+     * @return the name of the borough.
+     */
+    public String getBoroughName(int borough) {
+        return boroughNames[borough];
+    }
+
+    /**
+     * @param boroughName the name of a borough.
+     * @return the ID of the borough, or -1 if the borough is not in the table.
+     */
+    public int getBoroughId(String boroughName) {
+        return boroughIds.getOrDefault(boroughName, -1);
+    }
+
+    /**
+     * Find the first row of a borough on or after a given day.
+     *
+     * @param borough the ID of the borough.
+     * @param day     the day, in days since the epoch.
+     * @return the index of the row, or the end of the borough's rows if there is none.
+     */
+    public int firstRowFrom(int borough, int day) {
+        return search(boroughStarts[borough], boroughStarts[borough + 1], day);
+    }
+
+    /**
+     * Find the row just after the last row of a borough on or before a given day.
+     *
+     * @param borough the ID of the borough.
+     * @param day     the day, in days since the epoch.
+     * @return the index one past the last such row.
+     */
+    public int endRowTo(int borough, int day) {
+        return search(boroughStarts[borough], boroughStarts[borough + 1], day + 1);
+    }
+
+    /**
+     * @param row the index of a row.
+     * @return the day of the row, in days since the epoch.
+     */
+    public int getDay(int row) {
+        return dayColumn[row];
+    }
+
+    /**
+     * @param row    the index of a row.
+     * @param metric the index of a metric.
+     * @return the value of the metric in the row, or 0 if it is NULL.
+     */
+    public int getMetric(int row, int metric) {
+        return metricColumns[metric][row];
+    }
+
+    /**
+     * @param row    the index of a row.
+     * @param metric the index of a metric.
+     * @return true if the value of the metric in the row is NULL.
+     */
+    public boolean isNull(int row, int metric) {
+        return metricNulls[metric].get(row);
+    }
+
+    /**
+     * Sum a metric over a date range for one borough. NULL values are ignored.
+     *
+     * @param borough the ID of the borough.
+     * @param metric  the index of the metric.
+     * @param from    the first day of the range.
+     * @param to      the last day of the range.
+     * @return the sum of the metric.
+     */
+    public long sum(int borough, int metric, LocalDate from, LocalDate to) {
+        return rangeOf(prefixSums[metric], borough, from, to);
+    }
+
+    /**
+     * Count the rows with a value for a metric over a date range for one borough.
+     *
+     * @param borough the ID of the borough.
+     * @param metric  the index of the metric.
+     * @param from    the first day of the range.
+     * @param to      the last day of the range.
+     * @return the number of rows in the range where the metric is not NULL.
+     */
+    public int count(int borough, int metric, LocalDate from, LocalDate to) {
+        return (int) rangeOf(prefixCounts[metric], borough, from, to);
+    }
+
+    /**
+     * Sum a metric over a date range across London.
+     *
+     * @param metric the index of the metric.
+     * @param from   the first day of the range.
+     * @param to     the last day of the range.
+     * @return the sum of the metric.
+     */
+    public long sum(int metric, LocalDate from, LocalDate to) {
+        return sum(boroughNames.length, metric, from, to);
+    }
+
+    /**
+     * Count the rows with a value for a metric over a date range across London.
+     *
+     * @param metric the index of the metric.
+     * @param from   the first day of the range.
+     * @param to     the last day of the range.
+     * @return the number of rows in the range where the metric is not NULL.
+     */
+    public int count(int metric, LocalDate from, LocalDate to) {
+        return count(boroughNames.length, metric, from, to);
+    }
+
+    /**
+     * Answer "SELECT DISTINCT borough FROM covid_london ORDER BY borough".
+     *
+     * @return a result with a borough column, or null if the table does not hold every borough.
+     */
+    public QueryResult boroughs() {
+        if (!complete) {
+            return null;
+        }
+        QueryResult.Builder builder = new QueryResult.Builder("borough");
+        for (String borough : boroughNames) {
+            builder.addRow(borough);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Answer the query for the names of the columns of covid_london.
+     *
+     * @return a result with a COLUMN_NAME column, listing the columns in table order.
+     */
+    public QueryResult columnNames() {
+        QueryResult.Builder builder = new QueryResult.Builder("COLUMN_NAME");
+        for (String column : columnLabels) {
+            builder.addRow(column);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Answer the query for the total deaths and cases of each borough over a date range.
+     *
+     * @param from the first day of the range.
+     * @param to   the last day of the range.
+     * @return a result with borough, borough_deaths and borough_cases columns,
+     * or null if the table does not hold every borough.
+     */
+    public QueryResult boroughTotals(LocalDate from, LocalDate to) {
+        if (!complete) {
+            return null;
+        }
+        int newDeaths = metricIndex("new_deaths");
+        int newCases = metricIndex("new_cases");
+        QueryResult.Builder builder = new QueryResult.Builder("borough", "borough_deaths", "borough_cases");
+        for (int borough = 0; borough < boroughNames.length; borough++) {
+            if (!hasRows(borough, from, to)) {
+                continue;
+            }
+            builder.addRow(boroughNames[borough], sum(borough, newDeaths, from, to), sum(borough, newCases, from, to));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Answer the query for the deaths across London over a date range.
+     *
+     * @param from the first day of the range.
+     * @param to   the last day of the range.
+     * @return a result with a period_deaths column, or null if the table does not hold every borough.
+     */
+    public QueryResult periodDeaths(LocalDate from, LocalDate to) {
+        if (!complete) {
+            return null;
+        }
+        int newDeaths = metricIndex("new_deaths");
+        return new QueryResult.Builder("period_deaths")
+                .addRow(sumOrNull(newDeaths, from, to))
+                .build();
+    }
+
+    /**
+     * Answer the query for the statistics shown on the statistics screen over a date range.
+     *
+     * @param from the first day of the range.
+     * @param to   the last day of the range.
+     * @return a result with avg_ret_rec, avg_wp, period_deaths and avg_period_cases columns,
+     * or null if the table does not hold every borough.
+     */
+    public QueryResult londonStatistics(LocalDate from, LocalDate to) {
+        if (!complete) {
+            return null;
+        }
+        return new QueryResult.Builder("avg_ret_rec", "avg_wp", "period_deaths", "avg_period_cases")
+                .addRow(averageOrNull(metricIndex("retail_and_recreation"), from, to),
+                        averageOrNull(metricIndex("workplaces"), from, to),
+                        sumOrNull(metricIndex("new_deaths"), from, to),
+                        averageOrNull(metricIndex("total_cases"), from, to))
+                .build();
+    }
+
+    /**
+     * Answer the query for the total deaths of a borough on each day of a date range.
+     *
+     * @param boroughName the name of the borough.
+     * @param from        the first day of the range.
+     * @param to          the last day of the range.
+     * @return a result with date and total_deaths columns, in date order, or null if the table does not hold the
+     * borough.
+     */
+    public QueryResult dailyTotalDeaths(String boroughName, LocalDate from, LocalDate to) {
+        if (!covers(boroughName)) {
+            return null;
+        }
+        QueryResult.Builder builder = new QueryResult.Builder("date", "total_deaths");
+        int borough = getBoroughId(boroughName);
+        if (borough < 0) {
+            return builder.build();
+        }
+        int totalDeaths = metricIndex("total_deaths");
+        for (int row = firstRowFrom(borough, (int) from.toEpochDay()), end = endRowTo(borough, (int) to.toEpochDay());
+             row < end; row++) {
+            builder.addRow(LocalDate.ofEpochDay(dayColumn[row]).toString(), valueOrNull(row, totalDeaths));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Answer the query for the average of a metric in each borough over a date range.
+     *
+     * @param column the name of the metric.
+     * @param from   the first day of the range.
+     * @param to     the last day of the range.
+     * @return a result with average_statistic and borough columns, ordered by borough,
+     * or null if the table does not hold every borough.
+     */
+    public QueryResult boroughAverages(String column, LocalDate from, LocalDate to) {
+        if (!complete) {
+            return null;
+        }
+        int metric = metricIndex(column);
+        QueryResult.Builder builder = new QueryResult.Builder("average_statistic", "borough");
+        for (int borough = 0; borough < boroughNames.length; borough++) {
+            if (!hasRows(borough, from, to)) {
+                continue;
+            }
+            int count = count(borough, metric, from, to);
+            Double average = count == 0 ? null : (double) sum(borough, metric, from, to) / count;
+            builder.addRow(average, boroughNames[borough]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Answer the query for every row of a borough over a date range.
+     *
+     * @param boroughName the name of the borough.
+     * @param from        the first day of the range.
+     * @param to          the last day of the range.
+     * @return a result with the columns of covid_london, in date order, or null if the table does not hold the borough.
+     */
+    public QueryResult boroughRows(String boroughName, LocalDate from, LocalDate to) {
+        return boroughRows(boroughName, from, to, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Answer the query for one page of the rows of a borough over a date range, as used by keyset pagination.
+     *
+     * @param boroughName the name of the borough.
+     * @param from        the first day of the range.
+     * @param to          the last day of the range.
+     * @param limit       the largest number of rows to return.
+     * @param descending  true to return the last rows of the range, latest first, as ORDER BY `date` DESC does.
+     * @return a result with the columns of covid_london, in the requested date order, or null if the table does not
+     * hold the borough.
+     */
+    public QueryResult boroughRows(String boroughName, LocalDate from, LocalDate to, int limit, boolean descending) {
+        if (!covers(boroughName)) {
+            return null;
+        }
+        QueryResult.Builder builder = new QueryResult.Builder(columnLabels);
+        int borough = getBoroughId(boroughName);
+        if (borough < 0) {
+            return builder.build();
+        }
+        int first = firstRowFrom(borough, (int) from.toEpochDay());
+        int end = endRowTo(borough, (int) to.toEpochDay());
+        int count = Math.max(0, Math.min(limit, end - first));
+        for (int offset = 0; offset < count; offset++) {
+            int row = descending ? end - 1 - offset : first + offset;
+            Object[] values = new Object[columnLabels.length];
+            for (int i = 0; i < columnLabels.length; i++) {
+                switch (columnLabels[i]) {
+                    case "date" -> values[i] = LocalDate.ofEpochDay(dayColumn[row]).toString();
+                    case "borough" -> values[i] = boroughName;
+                    default -> {
+                        int metric = metricIndex(columnLabels[i]);
+                        values[i] = metric < 0 ? null : valueOrNull(row, metric);
+                    }
+                }
+            }
+            builder.addRow(values);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Check whether a borough has any rows in a date range.
+     */
+    private boolean hasRows(int borough, LocalDate from, LocalDate to) {
+        return rangeOf(prefixRows, borough, from, to) > 0;
+    }
+
+    /**
+     * Read the total of a date range from a series of the cumulative index.
+     * Days outside the table are clamped to its first and last day.
+     *
+     * @param prefix the cumulative index to read.
+     * @param series the ID of a borough, or the number of boroughs for London as a whole.
+     */
+    private long rangeOf(long[] prefix, int series, LocalDate from, LocalDate to) {
+        int base = series * (dayCount + 1);
+        int low = clampDay(from.toEpochDay());
+        int high = clampDay(to.toEpochDay() + 1);
+        return high <= low ? 0 : prefix[base + high] - prefix[base + low];
+    }
+
+    /**
+     * Read the total of a date range from a series of the cumulative index.
+     * Days outside the table are clamped to its first and last day.
+     *
+     * @param prefix the cumulative index to read.
+     * @param series the ID of a borough, or the number of boroughs for London as a whole.
+     */
+    private long rangeOf(int[] prefix, int series, LocalDate from, LocalDate to) {
+        int base = series * (dayCount + 1);
+        int low = clampDay(from.toEpochDay());
+        int high = clampDay(to.toEpochDay() + 1);
+        return high <= low ? 0 : prefix[base + high] - prefix[base + low];
+    }
+
+    /**
+     * Convert a day to its position in a series of the cumulative index.
+     */
+    private int clampDay(long day) {
+        return (int) Math.max(0, Math.min(dayCount, day - firstDay));
+    }
+
+    /**
+     * Sum a metric across London, or return null if there are no values to sum, as SQL's SUM does.
+     */
+    private Long sumOrNull(int metric, LocalDate from, LocalDate to) {
+        return count(metric, from, to) == 0 ? null : sum(metric, from, to);
+    }
+
+    /**
+     * Average a metric across London, or return null if there are no values to average, as SQL's AVG does.
+     */
+    private Double averageOrNull(int metric, LocalDate from, LocalDate to) {
+        int count = count(metric, from, to);
+        return count == 0 ? null : (double) sum(metric, from, to) / count;
+    }
+
+    /**
+     * Read a metric as an Integer, or null if it is NULL.
+     */
+    private Integer valueOrNull(int row, int metric) {
+        return metricNulls[metric].get(row) ? null : metricColumns[metric][row];
+    }
+
+    /**
+     * Find the first row between start (inclusive) and end (exclusive) whose day is not before the given day.
+     */
+    private int search(int start, int end, int day) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dayColumn[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Convert a date read from the database, which may carry a time after it, to days since the epoch.
+     */
+    private static int toEpochDay(String date) {
+        return (int) LocalDate.parse(date.substring(0, 10)).toEpochDay();
+    }
+}
@@ -0,0 +1,216 @@
+package utils.store;
+
+import utils.sql.queries.QueryResult;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Class to keep one daily series, such as the total deaths of a borough, aggregated at several granularities.
+ * <p>
+ * The series is grouped into buckets of a day, a week, a month and a quarter when the pyramid is built. Each bucket
+ * keeps the sum, the number and the last of the values in it, which is enough to show it as a total, an average or,
+ * for cumulative metrics, the value at the end of the bucket. Showing the series at another granularity, or over
+ * another part of its range, only reads the buckets, so it never has to go back to the database.
+ * <p>
+ * Buckets are identified by their first day, as the number of days since the epoch. Weeks start on a Monday. A pyramid
+ * is never changed once built, so it can be built on a worker thread and read from any thread.
+ *
+ * @author Enzo Bestetti (K23011872), Krystian Augustynowicz (K23000902), Jacelyne Tan (K23085324)
+ * @version 2024.04.18
+ */
+public class TimeSeriesPyramid {
+
+    /**
+     * The sizes of bucket a pyramid holds.
+     */
+    public enum Granularity {
+        DAY("Daily"),
+        WEEK("Weekly"),
+        MONTH("Monthly"),
+        QUARTER("Quarterly");
+
+        private final String displayName;
+
+        /**
+         * Constructor for the Granularity enum.
+         *
+         * @param displayName the name of the granularity shown to the user.
+         */
+        Granularity(String displayName) {
+            this.displayName = displayName;
+        }
+
+        /**
+         * Find the first day of the bucket holding a day.
+         *
+         * @param epochDay the day, as the number of days since the epoch.
+         * @return the first day of its bucket, as the number of days since the epoch.
+         */
+        public int bucketOf(int epochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            return (int) switch (this) {
+                case DAY -> epochDay;
+                case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).toEpochDay();
+                case MONTH -> date.withDayOfMonth(1).toEpochDay();
+                case QUARTER -> LocalDate.of(date.getYear(), (date.getMonthValue() - 1) / 3 * 3 + 1, 1).toEpochDay();
+            };
+        }
+
+        /**
+         * @return the name of the granularity shown to the user.
+         */
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * The ways the values in a bucket can be combined into one.
+     */
+    public enum Aggregate {
+        SUM,
+        AVERAGE,
+        LAST
+    }
+
+    private final Map<Granularity, Level> levels;
+
+    /**
+     * Constructor for the TimeSeriesPyramid class.
+     *
+     * @param epochDays the days of the series, as the number of days since the epoch, in increasing order.
+     * @param values    the value on each day.
+     */
+    public TimeSeriesPyramid(int[] epochDays, long[] values) {
+        if (epochDays.length != values.length) {
+            throw new IllegalArgumentException("Expected one value per day, but got " + epochDays.length +
+                    " days and " + values.length + " values");
+        }
+        levels = new EnumMap<>(Granularity.class);
+        for (Granularity granularity : Granularity.values()) {
+            levels.put(granularity, new Level(granularity, epochDays, values));
+        }
+    }
+
+    /**
+     * Build a pyramid from the result of a query with one row per day.
+     *
+     * @param result      the result of the query, in date order.
+     * @param dateColumn  the column holding the date of each row.
+     * @param valueColumn the column holding the value of each row. Rows where it is NULL are left out.
+     * @return the pyramid of the values.
+     */
+    public static TimeSeriesPyramid from(QueryResult result, String dateColumn, String valueColumn) {
+        int[] epochDays = new int[result.size()];
+        long[] values = new long[result.size()];
+        int count = 0;
+        for (int row = 0; row < result.size(); row++) {
+            if (result.isNull(row, valueColumn)) {
+                continue;
+            }
+            epochDays[count] = (int) LocalDate.parse(result.getString(row, dateColumn).substring(0, 10)).toEpochDay();
+            values[count] = result.getLong(row, valueColumn);
+            count++;
+        }
+        return new TimeSeriesPyramid(Arrays.copyOf(epochDays, count), Arrays.copyOf(values, count));
+    }
+
+    /**
+     * @param granularity the size of the buckets.
+     * @return the buckets of the series at that granularity.
+     */
+    public Level level(Granularity granularity) {
+        return levels.get(granularity);
+    }
+
+    /**
+     * Class to hold the buckets of a series at one granularity, in date order.
+     */
+    public static class Level {
+
+        private final int[] starts;
+        private final long[] sums;
+        private final int[] counts;
+        private final long[] lasts;
+
+        /**
+         * Constructor for the Level class, grouping the days of a series into buckets.
+         */
+        private Level(Granularity granularity, int[] epochDays, long[] values) {
+            int[] starts = new int[epochDays.length];
+            long[] sums = new long[epochDays.length];
+            int[] counts = new int[epochDays.length];
+            long[] lasts = new long[epochDays.length];
+            int size = 0;
+            for (int day = 0; day < epochDays.length; day++) {
+                int start = granularity.bucketOf(epochDays[day]);
+                if (size == 0 || starts[size - 1] != start) {
+                    starts[size++] = start;
+                }
+                sums[size - 1] += values[day];
+                counts[size - 1]++;
+                lasts[size - 1] = values[day];
+            }
+            this.starts = Arrays.copyOf(starts, size);
+            this.sums = Arrays.copyOf(sums, size);
+            this.counts = Arrays.copyOf(counts, size);
+            this.lasts = Arrays.copyOf(lasts, size);
+        }
+
+        /**
+         * @return the number of buckets.
+         */
+        public int size() {
+            return starts.length;
+        }
+
+        /**
+         * @param bucket the index of the bucket.
+         * @return the first day of the bucket, as the number of days since the epoch.
+         */
+        public int getStart(int bucket) {
+            return starts[bucket];
+        }
+
+        /**
+         * @param bucket    the index of the bucket.
+         * @param aggregate how to combine the values in the bucket.
+         * @return the combined value of the bucket.
+         */
+        public double getValue(int bucket, Aggregate aggregate) {
+            return switch (aggregate) {
+                case SUM -> sums[bucket];
+                case AVERAGE -> (double) sums[bucket] / counts[bucket];
+                case LAST -> lasts[bucket];
+            };
+        }
+
+        /**
+         * Find the first bucket to show for a range starting on a day, which is the bucket holding the day.
+         *
+         * @param epochDay the day, as the number of days since the epoch.
+         * @return the index of the last bucket starting on or before the day, or 0 if none does.
+         */
+        public int firstBucketFrom(int epochDay) {
+            int index = Arrays.binarySearch(starts, epochDay);
+            return index >= 0 ? index : Math.max(0, -index - 2);
+        }
+
+        /**
+         * Find the bucket after the last one starting on or before a day.
+         *
+         * @param epochDay the day, as the number of days since the epoch.
+         * @return the index after the last bucket starting on or before the day.
+         */
+        public int endBucketTo(int epochDay) {
+            int index = Arrays.binarySearch(starts, epochDay);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+    }
+}